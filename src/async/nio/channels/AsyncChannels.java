@@ -1,5 +1,6 @@
 package async.nio.channels;
 
+import async.nio.channels.AsyncDatagramChannels.AsynchronousDatagramChannel;
 import async.nio.channels.AsyncSocketChannels.AsynchronousServerSocketChannel;
 import async.nio.channels.AsyncSocketChannels.AsynchronousSocketChannel;
 import async.nio.channels.impl.Defaults;
@@ -64,6 +65,15 @@ public class AsyncChannels {
         public abstract AsynchronousServerSocketChannel openAsynchronousServerSocketChannel(AsynchronousChannelGroup group)
                 throws IOException;
 
+        /**
+         * Opens a datagram channel. Providers without datagram support keep
+         * this default, which throws UnsupportedOperationException.
+         */
+        public AsynchronousDatagramChannel openAsynchronousDatagramChannel(AsynchronousChannelGroup group)
+                throws IOException {
+            throw new UnsupportedOperationException("Datagram channels not supported by " + getClass().getName());
+        }
+
         public static AsynchronousChannelProvider provider() {
             return Defaults.defaultProvider();
         }
@@ -84,6 +94,15 @@ public class AsyncChannels {
                     Executors.newFixedThreadPool(nThreads, threadFactory), nThreads);
         }
 
+        /**
+         * Group whose notifications run on a work-stealing ForkJoinPool in
+         * async (FIFO) mode instead of a pool sharing a single queue.
+         */
+        public static AsynchronousChannelGroup withForkJoinPool(int parallelism) throws IOException {
+            return AsynchronousChannelProvider.provider().openAsynchronousChannelGroup(
+                    Defaults.forkJoinNotifierService(parallelism, "ForkJoin"), parallelism);
+        }
+
         public static AsynchronousChannelGroup withThreadPool(ExecutorService executor) throws IOException {
             return AsynchronousChannelProvider.provider().openAsynchronousChannelGroup(executor, 1);
         }
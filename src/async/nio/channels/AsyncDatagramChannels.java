@@ -0,0 +1,253 @@
+package async.nio.channels;
+
+import async.nio.channels.AsyncChannels.*;
+import async.nio.net.SocketOption;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncDatagramChannels {
+
+    /**
+     * Asynchronous datagram channel driven by the channel group dispatchers.
+     * <p/>
+     * Besides single-datagram receive/send, it offers a batched mode where every
+     * datagram queued on the socket is drained into a DatagramBatch per OP_READ
+     * wakeup (and every datagram of a batch is sent per OP_WRITE wakeup), so
+     * high packet-rate consumers pay one dispatch per batch instead of per packet.
+     */
+    public static abstract class AsynchronousDatagramChannel implements AsynchronousChannel, NetworkChannel {
+
+        private final AsynchronousChannelProvider provider;
+
+        protected AsynchronousDatagramChannel(AsynchronousChannelProvider provider) throws IOException {
+            this.provider = provider;
+        }
+
+        public final AsynchronousChannelProvider provider() {
+            return provider;
+        }
+
+        public static AsynchronousDatagramChannel open(AsynchronousChannelGroup group) throws IOException {
+            AsynchronousChannelProvider provider = (group == null) ? AsynchronousChannelProvider.provider() : group.provider();
+            return provider.openAsynchronousDatagramChannel(group);
+        }
+
+        public static AsynchronousDatagramChannel open() throws IOException {
+            return open(null);
+        }
+
+        public abstract AsynchronousDatagramChannel bind(SocketAddress local) throws IOException;
+
+        public abstract <T> AsynchronousDatagramChannel setOption(SocketOption<T> name, T value) throws IOException;
+
+        public abstract AsynchronousDatagramChannel connect(SocketAddress remote) throws IOException;
+
+        public abstract AsynchronousDatagramChannel disconnect() throws IOException;
+
+        public abstract boolean isConnected();
+
+        public abstract SocketAddress getRemoteAddress() throws IOException;
+
+        public abstract Future<SocketAddress> receive(ByteBuffer dst);
+
+        public final <A> void receive(ByteBuffer dst, A attachment, CompletionHandler<SocketAddress, ? super A> handler) {
+            receive(dst, 0L, TimeUnit.MILLISECONDS, attachment, handler);
+        }
+
+        public abstract <A> void receive(ByteBuffer dst, long timeout, TimeUnit unit, A attachment, CompletionHandler<SocketAddress, ? super A> handler);
+
+        public abstract Future<Integer> send(ByteBuffer src, SocketAddress target);
+
+        public final <A> void send(ByteBuffer src, SocketAddress target, A attachment, CompletionHandler<Integer, ? super A> handler) {
+            send(src, target, 0L, TimeUnit.MILLISECONDS, attachment, handler);
+        }
+
+        public abstract <A> void send(ByteBuffer src, SocketAddress target, long timeout, TimeUnit unit, A attachment, CompletionHandler<Integer, ? super A> handler);
+
+        public abstract Future<DatagramBatch> receive(DatagramBatch batch);
+
+        public final <A> void receive(DatagramBatch batch, A attachment, CompletionHandler<DatagramBatch, ? super A> handler) {
+            receive(batch, 0L, TimeUnit.MILLISECONDS, attachment, handler);
+        }
+
+        public abstract <A> void receive(DatagramBatch batch, long timeout, TimeUnit unit, A attachment, CompletionHandler<DatagramBatch, ? super A> handler);
+
+        public abstract Future<Integer> send(DatagramBatch batch);
+
+        public final <A> void send(DatagramBatch batch, A attachment, CompletionHandler<Integer, ? super A> handler) {
+            send(batch, 0L, TimeUnit.MILLISECONDS, attachment, handler);
+        }
+
+        public abstract <A> void send(DatagramBatch batch, long timeout, TimeUnit unit, A attachment, CompletionHandler<Integer, ? super A> handler);
+
+        public abstract DatagramSocket socket() throws IOException;
+
+        protected abstract DatagramChannel getDatagramChannel() throws IOException;
+    }
+
+    /**
+     * Receives datagrams fanned out by an AsyncMulticastSubscriber.
+     * <p/>
+     * The buffer is a shared, pooled view positioned over the datagram and is
+     * only valid for the duration of the call: listeners must not retain it nor
+     * modify its contents, and must copy whatever they need to keep.
+     */
+    public interface DatagramListener {
+
+        void onDatagram(ByteBuffer data, SocketAddress source);
+
+        void onError(Throwable exc);
+    }
+
+    /**
+     * Fixed ring of pooled (direct) datagram buffers and their peer addresses.
+     * <p/>
+     * A batch is owned by one operation at a time: it is filled by a batched
+     * receive (or by add() before a batched send) and must be clear()ed by the
+     * caller before being reused. Buffers are allocated once and recycled.
+     */
+    public static class DatagramBatch {
+
+        private final ByteBuffer[] buffers;
+        private final SocketAddress[] addresses;
+
+        private int size;
+        private int sent;
+        private long bytes;
+
+        public DatagramBatch(int capacity, int maxDatagramSize) {
+            this(capacity, maxDatagramSize, true);
+        }
+
+        public DatagramBatch(int capacity, int maxDatagramSize, boolean direct) {
+            if (capacity <= 0)
+                throw new IllegalArgumentException("Invalid capacity: " + capacity);
+            if (maxDatagramSize <= 0)
+                throw new IllegalArgumentException("Invalid datagram size: " + maxDatagramSize);
+
+            this.buffers = new ByteBuffer[capacity];
+            this.addresses = new SocketAddress[capacity];
+            for (int i = 0; i < capacity; i++) {
+                buffers[i] = direct ? ByteBuffer.allocateDirect(maxDatagramSize) : ByteBuffer.allocate(maxDatagramSize);
+            }
+        }
+
+        public int capacity() {
+            return buffers.length;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public boolean isFull() {
+            return size == buffers.length;
+        }
+
+        /**
+         * Total bytes received (or sent) by the last batched operation.
+         */
+        public long bytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the i-th datagram, positioned for reading.
+         */
+        public ByteBuffer buffer(int i) {
+            checkIndex(i);
+            return buffers[i];
+        }
+
+        public SocketAddress address(int i) {
+            checkIndex(i);
+            return addresses[i];
+        }
+
+        /**
+         * Queues a datagram for a batched send by copying it into the next
+         * pooled buffer. A null target sends on a connected channel.
+         *
+         * @return false if the batch is full
+         */
+        public boolean add(ByteBuffer src, SocketAddress target) {
+            if (isFull()) {
+                return false;
+            }
+            ByteBuffer buf = buffers[size];
+            buf.clear();
+            buf.put(src);
+            buf.flip();
+            addresses[size++] = target;
+            return true;
+        }
+
+        public void clear() {
+            for (int i = 0; i < size; i++) {
+                addresses[i] = null;
+            }
+            size = 0;
+            sent = 0;
+            bytes = 0;
+        }
+
+        /**
+         * Drains every datagram queued on the channel into the free buffers.
+         *
+         * @return the number of datagrams received
+         */
+        public int receiveFrom(DatagramChannel channel) throws IOException {
+            int received = 0;
+            while (size < buffers.length) {
+                ByteBuffer buf = buffers[size];
+                buf.clear();
+                SocketAddress source = channel.receive(buf);
+                if (source == null) {
+                    break;
+                }
+                buf.flip();
+                bytes += buf.remaining();
+                addresses[size++] = source;
+                received++;
+            }
+            return received;
+        }
+
+        /**
+         * Sends as many queued datagrams as the socket buffer accepts.
+         *
+         * @return true once every datagram of the batch has been sent
+         */
+        public boolean sendTo(DatagramChannel channel) throws IOException {
+            while (sent < size) {
+                ByteBuffer buf = buffers[sent];
+                int len = buf.remaining();
+                int n = (addresses[sent] == null) ? channel.write(buf) : channel.send(buf, addresses[sent]);
+                if (n == 0 && len > 0) {
+                    return false;
+                }
+                bytes += n;
+                sent++;
+            }
+            return true;
+        }
+
+        private void checkIndex(int i) {
+            if (i < 0 || i >= size)
+                throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+    }
+
+    private AsyncDatagramChannels() {
+    }   // Singleton
+}
@@ -142,6 +142,165 @@ public class AsyncSocketChannels {
         public abstract <T> AsynchronousServerSocketChannel setOption(SocketOption<T> name, T value) throws IOException;
     }
 
+    /**
+     * Splits an inbound byte stream into frames and wraps outbound payloads
+     * into frames.
+     * <p/>
+     * Codecs must be stateless so that a single instance can be shared by
+     * every channel; decoding runs on the dispatcher thread.
+     */
+    public interface FrameCodec {
+
+        /**
+         * Decodes the frame at the buffer's position.
+         *
+         * @param scanned number of bytes at the buffer's position already
+         *                examined by the previous call, which returned null;
+         *                codecs searching for a terminator resume there
+         * @return a view of the frame payload, with the buffer positioned past
+         *         the whole frame, or null (position untouched) if the buffer
+         *         does not hold a complete frame yet
+         * @throws IOException if the frame is malformed or too large
+         */
+        ByteBuffer decode(ByteBuffer in, int scanned) throws IOException;
+
+        /**
+         * Returns the buffers making up the frame, to be written in order.
+         */
+        ByteBuffer[] encode(ByteBuffer payload);
+    }
+
+    /**
+     * Frames prefixed by their payload length as a 1, 2 or 4 byte unsigned
+     * big-endian integer.
+     */
+    public static class LengthPrefixedCodec implements FrameCodec {
+
+        private final int headerLength;
+        private final int maxFrameLength;
+
+        public LengthPrefixedCodec(int headerLength, int maxFrameLength) {
+            if (headerLength != 1 && headerLength != 2 && headerLength != 4)
+                throw new IllegalArgumentException("Invalid header length: " + headerLength);
+            if (maxFrameLength <= 0)
+                throw new IllegalArgumentException("Invalid max frame length: " + maxFrameLength);
+            this.headerLength = headerLength;
+            this.maxFrameLength = maxFrameLength;
+        }
+
+        @Override
+        public ByteBuffer decode(ByteBuffer in, int scanned) throws IOException {
+            int pos = in.position();
+            if (in.limit() - pos < headerLength) {
+                return null;
+            }
+
+            long length;
+            switch (headerLength) {
+                case 1:
+                    length = in.get(pos) & 0xffL;
+                    break;
+                case 2:
+                    length = in.getShort(pos) & 0xffffL;
+                    break;
+                default:
+                    length = in.getInt(pos) & 0xffffffffL;
+            }
+            if (length > maxFrameLength)
+                throw new IOException("Frame length " + length + " exceeds " + maxFrameLength);
+
+            int start = pos + headerLength;
+            int end = start + (int) length;
+            if (end > in.limit()) {
+                return null;
+            }
+
+            ByteBuffer payload = in.duplicate();
+            payload.limit(end);
+            payload.position(start);
+            in.position(end);
+            return payload.slice();
+        }
+
+        @Override
+        public ByteBuffer[] encode(ByteBuffer payload) {
+            int length = payload.remaining();
+            if (length > maxFrameLength)
+                throw new IllegalArgumentException("Frame length " + length + " exceeds " + maxFrameLength);
+
+            ByteBuffer header = ByteBuffer.allocate(headerLength);
+            switch (headerLength) {
+                case 1:
+                    header.put((byte) length);
+                    break;
+                case 2:
+                    header.putShort((short) length);
+                    break;
+                default:
+                    header.putInt(length);
+            }
+            header.flip();
+            return new ByteBuffer[]{header, payload};
+        }
+    }
+
+    /**
+     * Frames terminated by a delimiter sequence (e.g. CRLF), which is
+     * stripped from decoded payloads.
+     */
+    public static class DelimitedCodec implements FrameCodec {
+
+        private final byte[] delimiter;
+        private final int maxFrameLength;
+
+        public DelimitedCodec(byte[] delimiter, int maxFrameLength) {
+            if (delimiter.length == 0)
+                throw new IllegalArgumentException("Empty delimiter");
+            if (maxFrameLength <= 0)
+                throw new IllegalArgumentException("Invalid max frame length: " + maxFrameLength);
+            this.delimiter = delimiter.clone();
+            this.maxFrameLength = maxFrameLength;
+        }
+
+        @Override
+        public ByteBuffer decode(ByteBuffer in, int scanned) throws IOException {
+            int pos = in.position(), limit = in.limit();
+            byte first = delimiter[0];
+
+            // A delimiter may straddle the end of what was already scanned
+            int from = pos + Math.max(0, scanned - delimiter.length + 1);
+            for (int i = from, last = limit - delimiter.length; i <= last; i++) {
+                if (i - pos > maxFrameLength)
+                    throw new IOException("Frame length exceeds " + maxFrameLength);
+                if (in.get(i) != first || !matches(in, i)) {
+                    continue;
+                }
+                ByteBuffer payload = in.duplicate();
+                payload.limit(i);
+                payload.position(pos);
+                in.position(i + delimiter.length);
+                return payload.slice();
+            }
+            if (limit - pos > maxFrameLength + delimiter.length)
+                throw new IOException("Frame length exceeds " + maxFrameLength);
+            return null;
+        }
+
+        @Override
+        public ByteBuffer[] encode(ByteBuffer payload) {
+            return new ByteBuffer[]{payload, ByteBuffer.wrap(delimiter).asReadOnlyBuffer()};
+        }
+
+        private boolean matches(ByteBuffer in, int index) {
+            for (int j = 1; j < delimiter.length; j++) {
+                if (in.get(index + j) != delimiter[j]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     private AsyncSocketChannels() {
     }   // Singleton
 }
@@ -0,0 +1,188 @@
+package async.nio.channels.impl;
+
+import async.nio.dispatchers.ChannelDispatcher;
+import async.nio.util.Logger;
+import async.nio.util.SpscRing;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Dispatcher-affine notifier workers.
+ * <p/>
+ * Every dispatcher gets its own small set of dedicated workers and each
+ * channel completes on one worker of its dispatcher, so a connection's data
+ * stays in the caches of the same cores from readiness to handler.
+ * Completions produced by the dispatcher thread are handed over through a
+ * lock-free SPSC ring; those produced by other threads (timeouts, closes),
+ * or by the dispatcher once the ring is full, go to the
+ * worker's overflow queue. With work-stealing enabled, idle workers drain
+ * the overflow queues of their siblings when their own worker is busy.
+ */
+class AffineNotifiers {
+
+    private static final Logger LOG = Logger.getLogger(AffineNotifiers.class);
+
+    public static final int RING_CAPACITY = 1024;
+
+    private final Map<ChannelDispatcher<?>, Worker[]> workers = new IdentityHashMap<ChannelDispatcher<?>, Worker[]>();
+    private final Worker[] all;
+    private final boolean stealing;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private volatile boolean shutdown;
+
+    AffineNotifiers(List<ChannelDispatcher<?>> dispatchers, int workersPerDispatcher, boolean stealing, String name) {
+        if (workersPerDispatcher <= 0)
+            throw new IllegalArgumentException("Invalid number of workers: " + workersPerDispatcher);
+
+        this.stealing = stealing;
+        this.all = new Worker[dispatchers.size() * workersPerDispatcher];
+
+        int n = 0;
+        for (int d = 0; d < dispatchers.size(); d++) {
+            Worker[] own = new Worker[workersPerDispatcher];
+            for (int w = 0; w < workersPerDispatcher; w++) {
+                own[w] = all[n++] = new Worker(dispatchers.get(d), "AsyncChannelNotifier[" + d + "." + w + "]: [ ChannelGroup: \"" + name + "\" ]");
+            }
+            workers.put(dispatchers.get(d), own);
+        }
+        for (Worker worker : all) {
+            worker.thread.start();
+        }
+    }
+
+    /**
+     * Returns the worker a new channel of the given dispatcher completes on,
+     * or null if the dispatcher has no workers.
+     */
+    Executor workerFor(ChannelDispatcher<?> dispatcher) {
+        Worker[] own = (dispatcher == null) ? null : workers.get(dispatcher);
+        if (own == null) {
+            return null;
+        }
+        return own[(next.getAndIncrement() & Integer.MAX_VALUE) % own.length];
+    }
+
+    /**
+     * Stops the workers once their queued completions have run.
+     */
+    boolean shutdown(long timeout, TimeUnit unit) {
+        shutdown = true;
+        for (Worker worker : all) {
+            LockSupport.unpark(worker.thread);
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            for (Worker worker : all) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining > 0) {
+                    worker.thread.join(remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Worker worker : all) {
+            if (worker.thread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Wakes a parked sibling to steal from a busy worker's overflow
+    private void wakeThief(Worker busy) {
+        for (Worker worker : all) {
+            if (worker != busy && worker.parked) {
+                LockSupport.unpark(worker.thread);
+                return;
+            }
+        }
+    }
+
+    private Runnable steal(Worker thief) {
+        for (Worker worker : all) {
+            if (worker != thief) {
+                Runnable task = worker.overflow.poll();
+                if (task != null) {
+                    return task;
+                }
+            }
+        }
+        return null;
+    }
+
+    private class Worker implements Executor, Runnable {
+
+        private final ChannelDispatcher<?> dispatcher;
+        private final SpscRing<Runnable> ring = new SpscRing<Runnable>(RING_CAPACITY);
+        private final Queue<Runnable> overflow = new ConcurrentLinkedQueue<Runnable>();
+        private final Thread thread;
+
+        private volatile boolean parked;
+
+        Worker(ChannelDispatcher<?> dispatcher, String name) {
+            this.dispatcher = dispatcher;
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (shutdown)
+                throw new RejectedExecutionException("Notifier shut down: " + thread.getName());
+
+            // Keep the dispatcher's own completions in order once it overflowed
+            if (!dispatcher.inDispatcherThread() || !overflow.isEmpty() || !ring.offer(task)) {
+                overflow.add(task);
+                if (stealing && !parked) {
+                    wakeThief(this);
+                }
+            }
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Runnable task = ring.poll();
+                if (task == null) {
+                    task = overflow.poll();
+                }
+                if (task == null && stealing) {
+                    task = steal(this);
+                }
+                if (task != null) {
+                    try {
+                        task.run();
+                    } catch (Throwable e) {
+                        if (LOG.isWarnEnabled())
+                            LOG.warn("Notification failed: {0}", e);
+                    }
+                    continue;
+                }
+                if (shutdown) {
+                    return;
+                }
+
+                parked = true;
+                if (ring.isEmpty() && overflow.isEmpty() && !shutdown) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+            }
+        }
+    }
+}
@@ -2,19 +2,28 @@ package async.nio.channels.impl;
 
 import async.nio.channels.AsyncChannels.AsynchronousChannelGroup;
 import async.nio.channels.AsyncChannels.AsynchronousChannelProvider;
+import async.nio.channels.Exceptions.ShutdownChannelGroupException;
+import async.nio.channels.system.Futures.FutureResult;
 import async.nio.channels.system.Notifications;
 import async.nio.dispatchables.DispatchableChannelEvents.PendingChannelEvent;
 import async.nio.dispatchables.DispatchableChannels.DispatchableChannel;
 import async.nio.dispatchers.ChannelDispatcher;
 import async.nio.dispatchers.ClientChannelDispatcher;
+import async.nio.dispatchers.IdleReaper;
+import async.nio.dispatchers.RetainedReadChannelDispatcher;
+import async.nio.dispatchers.SelectorHealth;
+import async.nio.dispatchers.WaitStrategies;
 import async.nio.util.CircularList;
 import async.nio.util.Logger;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 public class AsyncChannelGroup extends AsynchronousChannelGroup {
@@ -24,7 +33,8 @@ public class AsyncChannelGroup extends AsynchronousChannelGroup {
     private ExecutorService notifier;
 
     private CircularList<ChannelDispatcher<?>> dispatchers;
-    private ArrayList<DispatchableChannel<?>> channels;
+    private ChannelRegistry channels;
+    private GroupStats stats;
 
     private Timer timer;
     private String name;
@@ -32,8 +42,12 @@ public class AsyncChannelGroup extends AsynchronousChannelGroup {
     protected boolean isSystemGroup = false;
 
     private volatile boolean shutdown;
+    private volatile boolean serialNotifications;
+    private volatile AffineNotifiers affineNotifiers;
+    private volatile GroupDrain drain;
 
-    private int DISPATCHER_WAKEUP_DELAY_MS = 500;
+    private int DRAIN_PERIOD_MS = 50;
+    private int DRAIN_CLOSE_GRACE_MS = 1000;
 
     protected AsyncChannelGroup(AsynchronousChannelProvider provider, ExecutorService executor, Integer threads, Integer dispatchers) throws IOException {
         this(provider, null, executor, threads, dispatchers);
@@ -53,13 +67,14 @@ public class AsyncChannelGroup extends AsynchronousChannelGroup {
         this.name = (null == name) ? "#" + this.hashCode() : name;
 
         setupChannels();
+        setupStats();
         setupChannelDispatchers(dispatchers);
-        setupTimers(DISPATCHER_WAKEUP_DELAY_MS);
+        setupTimers();
         setupNotificationSystem(executor, threads);
     }
 
     protected final void addChannelDispatcher(final String name) throws IOException {
-        spawn(new ClientChannelDispatcher(name));
+        spawn(RetainedReadChannelDispatcher.isEnabled() ? new RetainedReadChannelDispatcher(name) : new ClientChannelDispatcher(name));
     }
 
     protected final void removeChannelDispatcher() {
@@ -72,21 +87,138 @@ public class AsyncChannelGroup extends AsynchronousChannelGroup {
     }
 
     public ChannelDispatcher<?> getChannelDispatcher() {
-        return dispatchers.next();
+        CircularList<ChannelDispatcher<?>> ds = dispatchers;
+        if (ds == null)
+            throw new ShutdownChannelGroupException();
+        return ds.next();
+    }
+
+    public boolean register(ChannelDispatcher<?> dispatcher, DispatchableChannel<?> channel) {
+        if (shutdown)
+            throw new ShutdownChannelGroupException();
+        return channels.add(dispatcher, channel);
+    }
+
+    public boolean unregister(ChannelDispatcher<?> dispatcher, DispatchableChannel<?> channel) {
+        return channels.remove(dispatcher, channel);
+    }
+
+    public ChannelRegistry channels() {
+        return channels;
+    }
+
+    public GroupStats stats() {
+        return stats;
+    }
+
+    // Selector metrics of every dispatcher, empty once shut down
+    List<SelectorHealth> selectorHealth() {
+        List<SelectorHealth> health = new ArrayList<SelectorHealth>();
+        CircularList<ChannelDispatcher<?>> ds = dispatchers;
+        if (ds != null) {
+            for (ChannelDispatcher<?> d : ds) {
+                if (d instanceof ClientChannelDispatcher) {
+                    health.add(((ClientChannelDispatcher) d).health());
+                }
+            }
+        }
+        return health;
+    }
+
+    /**
+     * Enables (timeout > 0) or disables (timeout <= 0) idle-connection
+     * reaping on every dispatcher of this group. Idle channels are swept by
+     * the dispatchers themselves, so no timer is scheduled per channel.
+     */
+    public void setIdleTimeout(long timeout, TimeUnit unit, IdleReaper.Policy policy) {
+        for (ChannelDispatcher<?> d : dispatchers) {
+            if (d instanceof ClientChannelDispatcher) {
+                ((ClientChannelDispatcher) d).setIdleTimeout(timeout, unit, policy);
+            }
+        }
+    }
+
+    /**
+     * Sets how every dispatcher of this group waits for readiness, e.g.
+     * WaitStrategies.BUSY_POLL to trade dedicated cores for latency.
+     */
+    public void setWaitStrategy(WaitStrategies.WaitStrategy strategy) {
+        for (ChannelDispatcher<?> d : dispatchers) {
+            if (d instanceof ClientChannelDispatcher) {
+                ((ClientChannelDispatcher) d).setWaitStrategy(strategy);
+            }
+        }
     }
 
     public void schedule(TimerTask timedTask, long timeout, TimeUnit unit) {
         timer.schedule(timedTask, unit.toMillis(timeout));
     }
 
+    /**
+     * Runs the task on the notifier pool (e.g. completions produced outside
+     * of the dispatchers, or blocking work such as SSLEngine delegated tasks).
+     */
+    public void execute(Runnable task) {
+        notifier.execute(task);
+    }
+
+    /**
+     * Enables (or disables) serial notifications for channels opened after
+     * the change: completions of a given channel then run one at a time and
+     * in order, so its handlers need no locking, while different channels
+     * still complete in parallel on the notifier pool.
+     */
+    public void setSerialNotifications(boolean serial) {
+        this.serialNotifications = serial;
+    }
+
+    public boolean isSerialNotifications() {
+        return serialNotifications;
+    }
+
+    /**
+     * Gives every current dispatcher its own dedicated notifier workers.
+     * Channels opened afterwards complete on a worker of their dispatcher
+     * instead of the shared notifier pool, keeping their data on the same
+     * cores from readiness to handler. With work-stealing, idle workers
+     * help with the overflow of busy siblings.
+     */
+    public synchronized void setAffineNotifiers(int workersPerDispatcher, boolean workStealing) {
+        if (shutdown)
+            throw new ShutdownChannelGroupException();
+        if (affineNotifiers != null)
+            throw new IllegalStateException("Affine notifiers already set");
+
+        affineNotifiers = new AffineNotifiers(new ArrayList<ChannelDispatcher<?>>(dispatchers), workersPerDispatcher, workStealing, name);
+    }
+
+    /**
+     * Returns the executor completing the events of a new channel served
+     * by the given dispatcher, or null to use the notifier pool directly.
+     */
+    public Executor newChannelNotifier(ChannelDispatcher<?> dispatcher) {
+        AffineNotifiers affine = affineNotifiers;
+        Executor executor = (affine != null) ? affine.workerFor(dispatcher) : null;
+        if (serialNotifications) {
+            return new Notifications.SerialExecutor((executor != null) ? executor : notifier);
+        }
+        return executor;
+    }
+
     public void notify(PendingChannelEvent event, Object res) {
         event.set(res);
-        Notifications.send(notifier, event, event.attachment, event.handler);
+        stampQueued(event);
+        Notifications.send(notifierFor(event), event, event.attachment, event.handler);
     }
 
     public void notifyError(PendingChannelEvent event, Throwable err) {
         event.setException(err);
-        Notifications.send(notifier, event, event.attachment, event.handler);
+        stampQueued(event);
+        Notifications.send(notifierFor(event), event, event.attachment, event.handler);
+    }
+
+    private Executor notifierFor(PendingChannelEvent<?> event) {
+        return (event.notifier != null) ? event.notifier : notifier;
     }
 
     @Override
@@ -114,33 +246,102 @@ public class AsyncChannelGroup extends AsynchronousChannelGroup {
         return shutdown0(timeout, unit);
     }
 
-    protected boolean shutdown0(long timeout, TimeUnit unit) {
+    /**
+     * Gracefully drains the group: stops accepting, lets in-flight completions
+     * and pending reads and writes finish until the given deadline, then closes
+     * every channel and shuts the group down. The returned future completes with
+     * the final drain progress once the group has been torn down.
+     * <p/>
+     * The system-wide group is never torn down: once drained it accepts new
+     * channels again.
+     */
+    public Future<GroupDrain> drain(long timeout, TimeUnit unit) {
         synchronized (this) {
+            if (drain != null && shutdown) {
+                return drain.future();
+            }
             if (shutdown) {
-                return true;
+                return new FutureResult<GroupDrain>(new ShutdownChannelGroupException());
             }
             shutdown = true;
+            drain = new GroupDrain(this, timeout, unit, DRAIN_CLOSE_GRACE_MS);
+        }
+
+        LOG.info("<{0}@{1}>: Draining {2} channels [Timeout = {3} {4}]",
+                this.getClass().getSimpleName(), Logger.getHashCode(this), channels.size(), timeout, unit.name());
+
+        timer.schedule(drain, 0, DRAIN_PERIOD_MS);
+        return drain.future();
+    }
+
+    /**
+     * Returns the progress of the running (or last) drain, or null if the
+     * group was never drained.
+     */
+    public GroupDrain drainProgress() {
+        return drain;
+    }
+
+    // Called by GroupDrain once all channels are closed
+    void terminate() {
+        // Skip shutdown for system-wide AsyncChannelGroup
+        // since it auto-shutdowns on system.exit(), but
+        // accept new channels (and drains) again
+        if (isSystemGroup) {
+            synchronized (this) {
+                shutdown = false;
+            }
+            return;
         }
+        shutdown1(DRAIN_CLOSE_GRACE_MS, TimeUnit.MILLISECONDS);
+    }
 
+    protected boolean shutdown0(long timeout, TimeUnit unit) {
         // Skip shutdown for system-wide AsyncChannelGroup
-        // since it auto-shutdowns on system.exit()
+        // since it auto-shutdowns on system.exit(), and
+        // keep accepting new channels
         if (isSystemGroup) {
             return true;
         }
 
+        synchronized (this) {
+            if (shutdown) {
+                return true;
+            }
+            shutdown = true;
+        }
+
         return shutdown1(timeout, unit);
     }
 
     // Called internally
     protected boolean shutdown1(long timeout, TimeUnit unit) {
         teardownTimers();
+        teardownStats();
         teardownChannels();
         teardownChannelDispatchers();
+        teardownAffineNotifiers(timeout, unit);
         return teardownNotificationSystem(timeout, unit);
     }
 
     private void setupChannels() {
-        this.channels = new ArrayList<DispatchableChannel<?>>();
+        this.channels = new ChannelRegistry();
+    }
+
+    private void setupStats() {
+        this.stats = new GroupStats(this, this.name);
+        this.stats.register();
+    }
+
+    private void teardownStats() {
+        stats.unregister();
+    }
+
+    // Queue wait is only timed for sampled channels
+    private void stampQueued(PendingChannelEvent<?> event) {
+        if (event.stats != null && event.stats.isSampled()) {
+            event.queuedAt = System.nanoTime();
+        }
     }
 
     private void setupChannelDispatchers(int dispatchers) throws IOException {
@@ -150,17 +351,9 @@ public class AsyncChannelGroup extends AsynchronousChannelGroup {
         }
     }
 
-    private void setupTimers(int delay) {
+    // Operation timeouts & drains only: dispatchers wake up on their own deadlines
+    private void setupTimers() {
         this.timer = new Timer("AsyncChannelTimer: [ ChannelGroup: \"" + this.name + "\" ]", true);
-        this.timer.schedule(new TimerTask() {
-
-            @Override
-            public void run() {
-                for (ChannelDispatcher<?> d : dispatchers) {
-                    d.wakeup();
-                }
-            }
-        }, 100, delay);
     }
 
     private void setupNotificationSystem(ExecutorService executor, int threads) {
@@ -169,17 +362,8 @@ public class AsyncChannelGroup extends AsynchronousChannelGroup {
     }
 
     private void teardownChannels() {
-        for (DispatchableChannel<?> d : channels) {
-            try {
-                d.close();
-            } catch (IOException ex) {
-                // This should not stop shutdown
-                // so discard problematic channels
-                LOG.severe(ex.toString());
-            }
-        }
+        channels.closeAll();
         channels.clear();
-        channels = null;
     }
 
     private void teardownChannelDispatchers() {
@@ -195,6 +379,13 @@ public class AsyncChannelGroup extends AsynchronousChannelGroup {
         timer = null;
     }
 
+    private void teardownAffineNotifiers(long timeout, TimeUnit unit) {
+        if (affineNotifiers != null && !affineNotifiers.shutdown(timeout, unit) && timeout > 0) {
+            LOG.warn("<{0}@{1}>: Affine notifiers still busy after {2} {3}",
+                    this.getClass().getSimpleName(), Logger.getHashCode(this), timeout, unit.name());
+        }
+    }
+
     private boolean teardownNotificationSystem(long timeout, TimeUnit unit) {
         notifier.shutdown();
         try {
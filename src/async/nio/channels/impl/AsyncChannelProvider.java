@@ -2,10 +2,13 @@ package async.nio.channels.impl;
 
 import async.nio.channels.AsyncChannels.AsynchronousChannelGroup;
 import async.nio.channels.AsyncChannels.AsynchronousChannelProvider;
+import async.nio.channels.AsyncDatagramChannels.AsynchronousDatagramChannel;
 import async.nio.channels.AsyncSocketChannels.AsynchronousServerSocketChannel;
 import async.nio.channels.AsyncSocketChannels.AsynchronousSocketChannel;
+import async.nio.channels.Exceptions.ShutdownChannelGroupException;
 
 import java.io.IOException;
+import java.nio.channels.DatagramChannel;
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -33,6 +36,11 @@ public class AsyncChannelProvider extends AsynchronousChannelProvider {
         return new AsyncServerSocketChannel(checkGroup(group));
     }
 
+    @Override
+    public AsynchronousDatagramChannel openAsynchronousDatagramChannel(AsynchronousChannelGroup group) throws IOException {
+        return new AsyncDatagramChannel(checkGroup(group), DatagramChannel.open());
+    }
+
     private AsyncChannelGroup checkGroup(AsynchronousChannelGroup group) throws IOException {
         if (group == null) {
             return Defaults.defaultGroup();
@@ -40,6 +48,9 @@ public class AsyncChannelProvider extends AsynchronousChannelProvider {
         if (group.provider() != this) {
             throw new IllegalArgumentException("AsynchronousChannelGroup not created by this provider.");
         }
+        if (group.isShutdown()) {
+            throw new ShutdownChannelGroupException();
+        }
 
         return (AsyncChannelGroup) group;
     }
@@ -0,0 +1,304 @@
+package async.nio.channels.impl;
+
+import async.nio.channels.AsyncChannels.CompletionHandler;
+import async.nio.channels.AsyncSocketChannels.AsynchronousSocketChannel;
+import async.nio.channels.system.Futures.FutureCompletionHandler;
+import async.nio.net.SocketOption;
+import async.nio.util.Checksums.Crc32C;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AsynchronousSocketChannel decorator keeping a running CRC32C of every byte
+ * read and written.
+ * <p/>
+ * Checksums are updated as operations complete, directly over the buffer
+ * region just transferred (no copy, no second pass), before the caller's
+ * handler runs. Each direction keeps a frame checksum, restarted by
+ * endReadFrame()/endWriteFrame(), and a stream checksum covering every byte
+ * since the channel was wrapped (frames are folded in with Crc32C.combine).
+ * <p/>
+ * transferTo/transferFrom bypass user buffers and are therefore rejected.
+ */
+public class AsyncChecksumSocketChannel extends AsynchronousSocketChannel {
+
+    private final AsynchronousSocketChannel channel;
+
+    private final Tally inbound = new Tally();
+    private final Tally outbound = new Tally();
+
+    public AsyncChecksumSocketChannel(AsynchronousSocketChannel channel) throws IOException {
+        super(channel.provider());
+        this.channel = channel;
+    }
+
+    public AsynchronousSocketChannel channel() {
+        return channel;
+    }
+
+    /**
+     * Returns the CRC32C of the bytes read since the last endReadFrame().
+     */
+    public int readChecksum() {
+        return inbound.frame();
+    }
+
+    /**
+     * Returns the CRC32C of the bytes read in the current frame and starts
+     * a new one.
+     */
+    public int endReadFrame() {
+        return inbound.endFrame();
+    }
+
+    /**
+     * Returns the CRC32C of every byte read so far.
+     */
+    public int readStreamChecksum() {
+        return inbound.stream();
+    }
+
+    public long bytesRead() {
+        return inbound.streamBytes();
+    }
+
+    public int writeChecksum() {
+        return outbound.frame();
+    }
+
+    public int endWriteFrame() {
+        return outbound.endFrame();
+    }
+
+    public int writeStreamChecksum() {
+        return outbound.stream();
+    }
+
+    public long bytesWritten() {
+        return outbound.streamBytes();
+    }
+
+    @Override
+    protected Socket getSocket() throws IOException {
+        return (channel instanceof AsyncSocketChannel) ? ((AsyncSocketChannel) channel).getSocket() : null;
+    }
+
+    @Override
+    protected SocketChannel getSocketChannel() throws IOException {
+        return (channel instanceof AsyncSocketChannel) ? ((AsyncSocketChannel) channel).getSocketChannel() : null;
+    }
+
+    @Override
+    public AsynchronousSocketChannel bind(SocketAddress local) throws IOException {
+        channel.bind(local);
+        return this;
+    }
+
+    @Override
+    public Future<Void> connect(SocketAddress remote) {
+        return channel.connect(remote);
+    }
+
+    @Override
+    public <A> void connect(SocketAddress remote, A attachment, CompletionHandler<Void, ? super A> handler) {
+        channel.connect(remote, attachment, handler);
+    }
+
+    @Override
+    public Future<Integer> read(ByteBuffer dst) {
+        FutureCompletionHandler<Integer> fut = new FutureCompletionHandler<Integer>();
+        read(dst, 0L, TimeUnit.MILLISECONDS, null, fut);
+        return fut;
+    }
+
+    @Override
+    public <A> void read(ByteBuffer dst, long timeout, TimeUnit unit, A attachment, CompletionHandler<Integer, ? super A> handler) {
+        channel.read(dst, timeout, unit, attachment, new Checksummed<Integer, A>(inbound, dst, handler));
+    }
+
+    @Override
+    public <A> void read(ByteBuffer[] dsts, int offset, int length, long timeout, TimeUnit unit, A attachment, CompletionHandler<Long, ? super A> handler) {
+        channel.read(dsts, offset, length, timeout, unit, attachment, new Checksummed<Long, A>(inbound, dsts, offset, length, handler));
+    }
+
+    @Override
+    public Future<Integer> write(ByteBuffer src) {
+        FutureCompletionHandler<Integer> fut = new FutureCompletionHandler<Integer>();
+        write(src, 0L, TimeUnit.MILLISECONDS, null, fut);
+        return fut;
+    }
+
+    @Override
+    public <A> void write(ByteBuffer src, long timeout, TimeUnit unit, A attachment, CompletionHandler<Integer, ? super A> handler) {
+        channel.write(src, timeout, unit, attachment, new Checksummed<Integer, A>(outbound, src, handler));
+    }
+
+    @Override
+    public <A> void write(ByteBuffer[] srcs, int offset, int length, long timeout, TimeUnit unit, A attachment, CompletionHandler<Long, ? super A> handler) {
+        channel.write(srcs, offset, length, timeout, unit, attachment, new Checksummed<Long, A>(outbound, srcs, offset, length, handler));
+    }
+
+    @Override
+    public Future<Long> transferTo(long position, long count, WritableByteChannel target) {
+        throw new UnsupportedOperationException("transferTo() bypasses checksumming");
+    }
+
+    @Override
+    public <A> void transferTo(long position, long count, WritableByteChannel target, long timeout, TimeUnit unit, A attachment, CompletionHandler<Long, ? super A> handler) {
+        throw new UnsupportedOperationException("transferTo() bypasses checksumming");
+    }
+
+    @Override
+    public Future<Long> transferFrom(ReadableByteChannel source, long position, long count) {
+        throw new UnsupportedOperationException("transferFrom() bypasses checksumming");
+    }
+
+    @Override
+    public <A> void transferFrom(ReadableByteChannel source, long position, long count, long timeout, TimeUnit unit, A attachment, CompletionHandler<Long, ? super A> handler) {
+        throw new UnsupportedOperationException("transferFrom() bypasses checksumming");
+    }
+
+    @Override
+    public AsynchronousSocketChannel shutdownInput() throws IOException {
+        channel.shutdownInput();
+        return this;
+    }
+
+    @Override
+    public AsynchronousSocketChannel shutdownOutput() throws IOException {
+        channel.shutdownOutput();
+        return this;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() throws IOException {
+        return channel.getLocalAddress();
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() throws IOException {
+        return channel.getRemoteAddress();
+    }
+
+    @Override
+    public <V> V getOption(SocketOption<V> name) throws IOException {
+        return channel.getOption(name);
+    }
+
+    @Override
+    public <T> AsynchronousSocketChannel setOption(SocketOption<T> name, T value) throws IOException {
+        channel.setOption(name, value);
+        return this;
+    }
+
+    @Override
+    public Set<SocketOption<?>> supportedOptions() {
+        return channel.supportedOptions();
+    }
+
+    /**
+     * Running frame and stream checksums of one direction.
+     */
+    private static class Tally {
+
+        private final Crc32C frame = new Crc32C();
+        private long frameBytes;
+
+        private int stream;
+        private long streamBytes;
+
+        synchronized void update(ByteBuffer buffer, int offset, int length) {
+            if (length > 0) {
+                frame.update(buffer, offset, length);
+                frameBytes += length;
+            }
+        }
+
+        synchronized int frame() {
+            return frame.getIntValue();
+        }
+
+        synchronized int endFrame() {
+            int crc = frame.getIntValue();
+            stream = Crc32C.combine(stream, crc, frameBytes);
+            streamBytes += frameBytes;
+            frame.reset();
+            frameBytes = 0;
+            return crc;
+        }
+
+        synchronized int stream() {
+            return Crc32C.combine(stream, frame.getIntValue(), frameBytes);
+        }
+
+        synchronized long streamBytes() {
+            return streamBytes + frameBytes;
+        }
+    }
+
+    /**
+     * Checksums the buffer regions transferred by an operation (from the
+     * positions recorded when it was issued up to the positions on
+     * completion) and then completes the caller's handler. A failed
+     * operation may still have moved some bytes, which are checksummed too.
+     */
+    private static class Checksummed<V, A> implements CompletionHandler<V, A> {
+
+        private final Tally tally;
+        private final ByteBuffer[] buffers;
+        private final int[] positions;
+        private final CompletionHandler<V, ? super A> handler;
+
+        Checksummed(Tally tally, ByteBuffer buffer, CompletionHandler<V, ? super A> handler) {
+            this(tally, new ByteBuffer[]{buffer}, 0, 1, handler);
+        }
+
+        Checksummed(Tally tally, ByteBuffer[] buffers, int offset, int length, CompletionHandler<V, ? super A> handler) {
+            this.tally = tally;
+            this.buffers = new ByteBuffer[length];
+            this.positions = new int[length];
+            for (int i = 0; i < length; i++) {
+                this.buffers[i] = buffers[offset + i];
+                this.positions[i] = buffers[offset + i].position();
+            }
+            this.handler = handler;
+        }
+
+        @Override
+        public void completed(V result, A attachment) {
+            transferred();
+            handler.completed(result, attachment);
+        }
+
+        @Override
+        public void failed(Throwable exc, A attachment) {
+            transferred();
+            handler.failed(exc, attachment);
+        }
+
+        private void transferred() {
+            for (int i = 0; i < buffers.length; i++) {
+                tally.update(buffers[i], positions[i], buffers[i].position() - positions[i]);
+            }
+        }
+    }
+}
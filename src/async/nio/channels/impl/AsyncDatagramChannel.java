@@ -0,0 +1,151 @@
+package async.nio.channels.impl;
+
+import async.nio.channels.AsyncChannels.CompletionHandler;
+import async.nio.channels.AsyncDatagramChannels.AsynchronousDatagramChannel;
+import async.nio.channels.AsyncDatagramChannels.DatagramBatch;
+import async.nio.dispatchables.DispatchableDatagramChannel;
+import async.nio.net.SocketOption;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncDatagramChannel extends AsynchronousDatagramChannel {
+
+    protected DatagramChannel channel;
+    protected DispatchableDatagramChannel impl;
+
+    public AsyncDatagramChannel(AsyncChannelGroup group) throws IOException {
+        this(group, DatagramChannel.open());
+    }
+
+    public AsyncDatagramChannel(AsyncChannelGroup grp, DatagramChannel dc) throws IOException {
+        super(grp.provider());
+        channel = dc;
+        try {
+            impl = new DispatchableDatagramChannel(grp, dc);
+            impl.register();
+        } catch (IOException e) {
+            dc.close();
+            throw e;
+        } catch (RuntimeException e) {
+            dc.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public DatagramSocket socket() throws IOException {
+        return channel == null ? null : channel.socket();
+    }
+
+    @Override
+    protected DatagramChannel getDatagramChannel() throws IOException {
+        return channel;
+    }
+
+    @Override
+    public AsynchronousDatagramChannel bind(SocketAddress local) throws IOException {
+        impl.bind(local);
+        return this;
+    }
+
+    @Override
+    public AsynchronousDatagramChannel connect(SocketAddress remote) throws IOException {
+        impl.connect(remote);
+        return this;
+    }
+
+    @Override
+    public AsynchronousDatagramChannel disconnect() throws IOException {
+        impl.disconnect();
+        return this;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return impl.isConnected();
+    }
+
+    @Override
+    public Future<SocketAddress> receive(ByteBuffer dst) {
+        return impl.receive(dst);
+    }
+
+    @Override
+    public <A> void receive(ByteBuffer dst, long timeout, TimeUnit unit, A attachment, CompletionHandler<SocketAddress, ? super A> handler) {
+        impl.receive(dst, timeout, unit, attachment, handler);
+    }
+
+    @Override
+    public Future<Integer> send(ByteBuffer src, SocketAddress target) {
+        return impl.send(src, target);
+    }
+
+    @Override
+    public <A> void send(ByteBuffer src, SocketAddress target, long timeout, TimeUnit unit, A attachment, CompletionHandler<Integer, ? super A> handler) {
+        impl.send(src, target, timeout, unit, attachment, handler);
+    }
+
+    @Override
+    public Future<DatagramBatch> receive(DatagramBatch batch) {
+        return impl.receive(batch);
+    }
+
+    @Override
+    public <A> void receive(DatagramBatch batch, long timeout, TimeUnit unit, A attachment, CompletionHandler<DatagramBatch, ? super A> handler) {
+        impl.receive(batch, timeout, unit, attachment, handler);
+    }
+
+    @Override
+    public Future<Integer> send(DatagramBatch batch) {
+        return impl.send(batch);
+    }
+
+    @Override
+    public <A> void send(DatagramBatch batch, long timeout, TimeUnit unit, A attachment, CompletionHandler<Integer, ? super A> handler) {
+        impl.send(batch, timeout, unit, attachment, handler);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return impl != null && impl.isOpen();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        impl.close();
+        channel = null;
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() throws IOException {
+        return channel == null ? null : impl.getLocalAddress();
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() throws IOException {
+        return channel == null ? null : impl.getRemoteAddress();
+    }
+
+    @Override
+    public <T> T getOption(SocketOption<T> name) throws IOException {
+        return impl.getOption(name);
+    }
+
+    @Override
+    public <T> AsynchronousDatagramChannel setOption(SocketOption<T> name, T value) throws IOException {
+        impl.setOption(name, value);
+        return this;
+    }
+
+    @Override
+    public Set<SocketOption<?>> supportedOptions() {
+        return impl.supportedOptions();
+    }
+}
@@ -0,0 +1,203 @@
+package async.nio.channels.impl;
+
+import async.nio.channels.AsyncChannels.AsynchronousChannel;
+import async.nio.channels.AsyncChannels.CompletionHandler;
+import async.nio.channels.AsyncSocketChannels.FrameCodec;
+import async.nio.channels.Exceptions.ReadPendingException;
+import async.nio.channels.system.Futures.FutureCompletionHandler;
+import async.nio.util.Nio.BufferPool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Message-oriented view of an AsyncSocketChannel.
+ * <p/>
+ * Inbound bytes are accumulated in a pooled buffer and decoded by the
+ * FrameCodec on the dispatcher thread, so a read only completes once at
+ * least one whole frame is available, with every frame decoded on that
+ * wakeup delivered as a batch. Outbound payloads are framed and written
+ * with a single gathering write.
+ * <p/>
+ * Delivered frames are views over the pooled buffer: they are only valid
+ * until the next readFrames() call and must be copied to be retained.
+ */
+public class AsyncFrameChannel implements AsynchronousChannel {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final BufferPool DEFAULT_POOL = new BufferPool(DEFAULT_BUFFER_SIZE, 1024);
+
+    private final AsyncSocketChannel channel;
+    private final FrameCodec codec;
+    private final BufferPool pool;
+
+    private final List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+
+    // Guarded by this. The read buffer (null once closed) belongs to the
+    // pending read, if any, which returns it to the pool if closed meanwhile
+    private ByteBuffer in;
+    private boolean reading;
+
+    public AsyncFrameChannel(AsyncSocketChannel channel, FrameCodec codec) {
+        this(channel, codec, DEFAULT_POOL);
+    }
+
+    public AsyncFrameChannel(AsyncSocketChannel channel, FrameCodec codec, BufferPool pool) {
+        this.channel = channel;
+        this.codec = codec;
+        this.pool = pool;
+        this.in = pool.acquire();
+    }
+
+    public AsyncSocketChannel channel() {
+        return channel;
+    }
+
+    public FrameCodec codec() {
+        return codec;
+    }
+
+    public Future<List<ByteBuffer>> readFrames() {
+        FutureCompletionHandler<List<ByteBuffer>> fut = new FutureCompletionHandler<List<ByteBuffer>>();
+        readFrames(0L, TimeUnit.MILLISECONDS, null, fut);
+        return fut;
+    }
+
+    public <A> void readFrames(A attachment, CompletionHandler<List<ByteBuffer>, ? super A> handler) {
+        readFrames(0L, TimeUnit.MILLISECONDS, attachment, handler);
+    }
+
+    /**
+     * Completes with the next batch of frames, or with an empty list at end
+     * of stream.
+     */
+    public <A> void readFrames(long timeout, TimeUnit unit, A attachment, final CompletionHandler<List<ByteBuffer>, ? super A> handler) {
+        final ByteBuffer buf;
+        synchronized (this) {
+            buf = in;
+            if (buf != null) {
+                if (reading)
+                    throw new ReadPendingException();
+                reading = true;
+            }
+        }
+        if (buf == null) {
+            handler.failed(new ClosedChannelException(), attachment);
+            return;
+        }
+
+        // Previous batch has been consumed, keep any trailing partial frame
+        if (!frames.isEmpty()) {
+            frames.clear();
+            buf.compact();
+        }
+
+        try {
+            issueRead(buf, timeout, unit, attachment, handler);
+        } catch (RuntimeException e) {
+            // Rejected before it was issued (e.g. ReadPendingException)
+            if (readRejected()) {
+                pool.release(buf);
+            }
+            throw e;
+        }
+    }
+
+    private <A> void issueRead(final ByteBuffer buf, long timeout, TimeUnit unit, A attachment, final CompletionHandler<List<ByteBuffer>, ? super A> handler) {
+        channel.impl.readFrames(codec, buf, frames, timeout, unit, attachment, new CompletionHandler<List<ByteBuffer>, A>() {
+            @Override
+            public void completed(List<ByteBuffer> result, A attachment) {
+                boolean closed = readDone();
+                try {
+                    handler.completed(result, attachment);
+                } finally {
+                    if (closed) {
+                        pool.release(buf);
+                    }
+                }
+            }
+
+            @Override
+            public void failed(Throwable exc, A attachment) {
+                boolean closed = readDone();
+                try {
+                    handler.failed(exc, attachment);
+                } finally {
+                    if (closed) {
+                        pool.release(buf);
+                    }
+                }
+            }
+        });
+    }
+
+    // Returns true if the channel was closed during the read, in which case
+    // the caller must release the buffer
+    private synchronized boolean readDone() {
+        reading = false;
+        return in == null;
+    }
+
+    // Same as readDone(), unless the read already completed (its handler
+    // threw) and released the buffer
+    private synchronized boolean readRejected() {
+        return reading && readDone();
+    }
+
+    public Future<Long> writeFrames(ByteBuffer... payloads) {
+        FutureCompletionHandler<Long> fut = new FutureCompletionHandler<Long>();
+        writeFrames(payloads, 0L, TimeUnit.MILLISECONDS, null, fut);
+        return fut;
+    }
+
+    public <A> void writeFrame(ByteBuffer payload, A attachment, CompletionHandler<Long, ? super A> handler) {
+        writeFrames(new ByteBuffer[]{payload}, 0L, TimeUnit.MILLISECONDS, attachment, handler);
+    }
+
+    /**
+     * Frames every payload and writes them all with one gathering write,
+     * completing with the number of bytes written (framing included) once
+     * everything has been sent.
+     */
+    public <A> void writeFrames(ByteBuffer[] payloads, long timeout, TimeUnit unit, A attachment, CompletionHandler<Long, ? super A> handler) {
+        List<ByteBuffer> srcs = new ArrayList<ByteBuffer>(payloads.length * 2);
+        for (ByteBuffer payload : payloads) {
+            for (ByteBuffer buf : codec.encode(payload)) {
+                srcs.add(buf);
+            }
+        }
+        ByteBuffer[] gather = srcs.toArray(new ByteBuffer[srcs.size()]);
+        channel.impl.writeFully(gather, 0, gather.length, timeout, unit, attachment, handler);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Closes the channel and returns the read buffer to its pool, right away
+     * or once the pending read has completed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            ByteBuffer buf;
+            synchronized (this) {
+                buf = reading ? null : in;
+                in = null;
+            }
+            if (buf != null) {
+                pool.release(buf);
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package async.nio.channels.impl;
+
+import async.nio.channels.AsyncChannels.CompletionHandler;
+import async.nio.channels.AsyncDatagramChannels.DatagramBatch;
+import async.nio.channels.AsyncDatagramChannels.DatagramListener;
+import async.nio.net.StandardSocketOptions;
+import async.nio.util.Logger;
+import async.nio.util.Net.DatagramChannels;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous multicast receiver with zero-copy fan-out.
+ * <p/>
+ * The group is joined once, datagrams are drained per wakeup into a pooled
+ * DatagramBatch, and every datagram is handed to each registered listener
+ * by reference (the same pooled buffer, re-positioned for each listener).
+ * The next batched receive is only issued once all listeners have returned,
+ * so pooled buffers are never overwritten while being read.
+ */
+public class AsyncMulticastSubscriber {
+
+    private static final Logger LOG = Logger.getLogger(AsyncMulticastSubscriber.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    public static final int DEFAULT_DATAGRAM_SIZE = 1500;
+
+    private final CopyOnWriteArrayList<DatagramListener> listeners = new CopyOnWriteArrayList<DatagramListener>();
+
+    private final DatagramChannel dc;
+    private final AsyncDatagramChannel channel;
+    private final DatagramBatch batch;
+
+    private final MembershipKey membership;
+
+    private final AtomicLong datagrams = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    private volatile boolean started;
+    private volatile boolean closed;
+
+    public AsyncMulticastSubscriber(AsyncChannelGroup group, InetAddress groupAddress, int port, NetworkInterface netIf) throws IOException {
+        this(group, groupAddress, port, netIf, DEFAULT_BATCH_SIZE, DEFAULT_DATAGRAM_SIZE);
+    }
+
+    public AsyncMulticastSubscriber(AsyncChannelGroup group, InetAddress groupAddress, int port, NetworkInterface netIf,
+                                    int batchSize, int maxDatagramSize) throws IOException {
+        if (!groupAddress.isMulticastAddress())
+            throw new IllegalArgumentException("Not a multicast address: " + groupAddress);
+
+        this.batch = new DatagramBatch(batchSize, maxDatagramSize);
+
+        this.dc = DatagramChannel.open();
+        AsyncDatagramChannel ch = null;
+        boolean opened = false;
+        try {
+            ch = new AsyncDatagramChannel((group == null) ? Defaults.defaultGroup() : group, dc);
+            ch.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            ch.bind(new InetSocketAddress(port));
+
+            // Join once, for the lifetime of the subscriber
+            this.membership = DatagramChannels.joinGroup(dc, groupAddress, netIf);
+            opened = true;
+        } finally {
+            if (!opened) {
+                // Once created, the channel is registered with the group
+                // and only closing it unregisters it
+                abort(ch);
+            }
+        }
+        this.channel = ch;
+    }
+
+    // Closes what the constructor opened without masking its failure
+    private void abort(AsyncDatagramChannel ch) {
+        try {
+            if (ch != null) {
+                ch.close();
+            }
+            dc.close();
+        } catch (IOException e) {
+            if (LOG.isDebugEnabled())
+                LOG.debug("abort(): {0}", e);
+        }
+    }
+
+    public AsyncMulticastSubscriber subscribe(DatagramListener listener) {
+        if (listener == null)
+            throw new NullPointerException();
+        listeners.addIfAbsent(listener);
+        return this;
+    }
+
+    public AsyncMulticastSubscriber unsubscribe(DatagramListener listener) {
+        listeners.remove(listener);
+        return this;
+    }
+
+    public synchronized AsyncMulticastSubscriber start() {
+        if (closed)
+            throw new IllegalStateException("Subscriber closed");
+        if (!started) {
+            started = true;
+            receive();
+        }
+        return this;
+    }
+
+    public long datagrams() {
+        return datagrams.get();
+    }
+
+    public long batches() {
+        return batches.get();
+    }
+
+    public boolean isOpen() {
+        return !closed && channel.isOpen();
+    }
+
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            DatagramChannels.leaveGroup(membership);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void receive() {
+        batch.clear();
+        channel.receive(batch, null, handler);
+    }
+
+    private void fanOut(DatagramBatch received) {
+        // Snapshot iteration, no locking on the hot path
+        Object[] targets = listeners.toArray();
+        int size = received.size();
+
+        for (int i = 0; i < size; i++) {
+            ByteBuffer data = received.buffer(i);
+            int limit = data.limit();
+            for (Object target : targets) {
+                data.limit(limit);
+                data.position(0);
+                try {
+                    ((DatagramListener) target).onDatagram(data, received.address(i));
+                } catch (Exception e) {
+                    LOG.warn("onDatagram(): {0}", e);
+                }
+            }
+        }
+        datagrams.addAndGet(size);
+        batches.incrementAndGet();
+    }
+
+    private void fail(Throwable exc) {
+        for (DatagramListener listener : listeners) {
+            try {
+                listener.onError(exc);
+            } catch (Exception e) {
+                LOG.warn("onError(): {0}", e);
+            }
+        }
+    }
+
+    private final CompletionHandler<DatagramBatch, Void> handler = new CompletionHandler<DatagramBatch, Void>() {
+
+        @Override
+        public void completed(DatagramBatch result, Void attachment) {
+            fanOut(result);
+            if (!closed) {
+                receive();
+            }
+        }
+
+        @Override
+        public void failed(Throwable exc, Void attachment) {
+            if (closed && exc instanceof AsynchronousCloseException) {
+                return;
+            }
+            fail(exc);
+        }
+    };
+}
@@ -3,6 +3,7 @@ package async.nio.channels.impl;
 import async.nio.channels.AsyncChannels.CompletionHandler;
 import async.nio.channels.AsyncSocketChannels.AsynchronousSocketChannel;
 import async.nio.dispatchables.DispatchableSocketChannel;
+import async.nio.dispatchers.ChannelDispatcher;
 import async.nio.net.SocketOption;
 import async.nio.net.SocketOptions;
 
@@ -29,7 +30,24 @@ public class AsyncSocketChannel extends AsynchronousSocketChannel {
     public AsyncSocketChannel(AsyncChannelGroup grp, SocketChannel sc) throws IOException {
         super(grp.provider());
         channel = sc;
-        impl = new DispatchableSocketChannel(grp, sc);
+        try {
+            impl = new DispatchableSocketChannel(grp, sc);
+            impl.register();
+        } catch (IOException e) {
+            sc.close();
+            throw e;
+        } catch (RuntimeException e) {
+            sc.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the dispatcher serving this channel, e.g. to run tasks that
+     * mutate per-connection state without locking.
+     */
+    public ChannelDispatcher<?> dispatcher() {
+        return impl.dispatcher();
     }
 
     @Override
@@ -0,0 +1,909 @@
+package async.nio.channels.impl;
+
+import async.nio.channels.AsyncChannels.CompletionHandler;
+import async.nio.channels.AsyncSocketChannels.AsynchronousSocketChannel;
+import async.nio.channels.Exceptions.WritePendingException;
+import async.nio.channels.system.Futures.FutureCompletionHandler;
+import async.nio.dispatchables.DispatchableChannelBase;
+import async.nio.dispatchables.DispatchableSocketChannel;
+import async.nio.net.SocketOption;
+import async.nio.util.Logger;
+import async.nio.util.Nio.BufferPool;
+import async.nio.util.Nio.ByteBuffers;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TLS over an AsyncSocketChannel, driven by an SSLEngine.
+ * <p/>
+ * Records are wrapped and unwrapped inside the dispatcher as the socket
+ * becomes readable/writable, so a read only completes once application data
+ * has been decrypted. Network buffers are pooled direct buffers. The
+ * handshake is asynchronous (and started implicitly by the first read or
+ * write); delegated tasks, including those of post-handshake messages, run
+ * on the group's notifier pool so they never stall a dispatcher.
+ * <p/>
+ * Engines are created through a SessionCache keyed by peer host and port,
+ * which lets clients resume sessions instead of paying for full handshakes.
+ */
+public class AsyncSslSocketChannel extends AsynchronousSocketChannel {
+
+    private static final Logger LOG = Logger.getLogger(AsyncSslSocketChannel.class);
+
+    public static final int POOLED_BUFFER_SIZE = 17 * 1024;
+
+    private static final BufferPool PACKET_POOL = new BufferPool(POOLED_BUFFER_SIZE, 1024);
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    // Handshake step outcomes
+    private static final Object DONE = new Object();
+    private static final Object NEED_READ = new Object();
+    private static final Object NEED_WRITE = new Object();
+    private static final Object NEED_TASK = new Object();
+
+    /**
+     * Creates SSLEngines from an SSLContext whose client and server session
+     * caches are sized for resumption. Engines are bound to the peer's host
+     * and port, which is what JSSE keys resumable client sessions on.
+     */
+    public static class SessionCache {
+
+        public static final int DEFAULT_SIZE = 10000;
+        public static final int DEFAULT_TIMEOUT_SECONDS = 3600;
+
+        private final SSLContext context;
+
+        public SessionCache(SSLContext context) {
+            this(context, DEFAULT_SIZE, DEFAULT_TIMEOUT_SECONDS);
+        }
+
+        public SessionCache(SSLContext context, int size, int timeoutSeconds) {
+            this.context = context;
+            configure(context.getClientSessionContext(), size, timeoutSeconds);
+            configure(context.getServerSessionContext(), size, timeoutSeconds);
+        }
+
+        public SSLContext context() {
+            return context;
+        }
+
+        public SSLEngine newEngine(boolean clientMode, SocketAddress peer) {
+            SSLEngine engine = (peer instanceof InetSocketAddress)
+                    ? context.createSSLEngine(((InetSocketAddress) peer).getHostString(), ((InetSocketAddress) peer).getPort())
+                    : context.createSSLEngine();
+            engine.setUseClientMode(clientMode);
+            return engine;
+        }
+
+        private static void configure(SSLSessionContext sessions, int size, int timeoutSeconds) {
+            if (sessions != null) {
+                sessions.setSessionCacheSize(size);
+                sessions.setSessionTimeout(timeoutSeconds);
+            }
+        }
+    }
+
+    private final AsyncSocketChannel channel;
+    private final AsyncChannelGroup group;
+    private final SessionCache sessions;
+    private final boolean clientMode;
+
+    // Guards the engine and the buffers, which are used by the dispatcher
+    // thread and (for handshakes, delegated tasks and close) by others
+    private final Object lock = new Object();
+
+    private SSLEngine engine;
+    private ByteBuffer netIn;   // <= Encrypted, fill mode
+    private ByteBuffer netOut;  // <= Encrypted, fill mode
+    private ByteBuffer appIn;   // <= Decrypted, fill mode
+
+    private boolean handshaken;
+    private boolean handshaking;
+    private Throwable handshakeError;
+    private final List<Waiter<?>> waiters = new ArrayList<Waiter<?>>();
+
+    // Post-handshake state: delegated tasks running on the notifier pool,
+    // and records of the engine's own (e.g. key update) being flushed
+    private boolean tasksRunning;
+    private boolean flushing;
+    private Runnable deferredWrite;
+
+    private volatile boolean closed;
+
+    public AsyncSslSocketChannel(AsyncSocketChannel channel, SessionCache sessions, boolean clientMode) throws IOException {
+        super(channel.provider());
+        this.channel = channel;
+        this.group = channel.impl.group();
+        this.sessions = sessions;
+        this.clientMode = clientMode;
+    }
+
+    public AsynchronousSocketChannel channel() {
+        return channel;
+    }
+
+    /**
+     * Returns the negotiated session, or null before the handshake started.
+     */
+    public SSLSession getSession() {
+        synchronized (lock) {
+            return engine == null ? null : engine.getSession();
+        }
+    }
+
+    public Future<Void> handshake() {
+        FutureCompletionHandler<Void> fut = new FutureCompletionHandler<Void>();
+        handshake(null, fut);
+        return fut;
+    }
+
+    /**
+     * Performs the TLS handshake, completing once application data can flow.
+     * Concurrent callers share the same handshake.
+     */
+    public <A> void handshake(A attachment, CompletionHandler<Void, ? super A> handler) {
+        boolean start;
+        synchronized (lock) {
+            if (!handshaken && handshakeError == null) {
+                waiters.add(new Waiter<A>(attachment, handler));
+                start = !handshaking;
+                handshaking = true;
+            } else {
+                start = false;
+                completeLater(handler, attachment, handshakeError, null);
+            }
+        }
+        if (start) {
+            try {
+                begin();
+                new Handshake().proceed(null);
+            } catch (Exception e) {
+                finishHandshake(e);
+            }
+        }
+    }
+
+    @Override
+    protected Socket getSocket() throws IOException {
+        return channel.getSocket();
+    }
+
+    @Override
+    protected SocketChannel getSocketChannel() throws IOException {
+        return channel.getSocketChannel();
+    }
+
+    @Override
+    public AsynchronousSocketChannel bind(SocketAddress local) throws IOException {
+        channel.bind(local);
+        return this;
+    }
+
+    @Override
+    public Future<Void> connect(SocketAddress remote) {
+        return channel.connect(remote);
+    }
+
+    @Override
+    public <A> void connect(SocketAddress remote, A attachment, CompletionHandler<Void, ? super A> handler) {
+        channel.connect(remote, attachment, handler);
+    }
+
+    @Override
+    public Future<Integer> read(ByteBuffer dst) {
+        FutureCompletionHandler<Integer> fut = new FutureCompletionHandler<Integer>();
+        read(dst, 0L, TimeUnit.MILLISECONDS, null, fut);
+        return fut;
+    }
+
+    @Override
+    public <A> void read(final ByteBuffer dst, final long timeout, final TimeUnit unit, final A attachment, final CompletionHandler<Integer, ? super A> handler) {
+        final ByteBuffer[] dsts = new ByteBuffer[]{dst};
+        Callable<Object> function = new Callable<Object>() {
+            @Override
+            public Object call() throws IOException {
+                Object res = unwrap(dsts, 0, 1);
+                return (res == DispatchableChannelBase.NOT_READY) ? res : Integer.valueOf(((Long) res).intValue());
+            }
+        };
+        read0(function, timeout, unit, attachment, handler);
+    }
+
+    @Override
+    public <A> void read(final ByteBuffer[] dsts, final int offset, final int length, long timeout, TimeUnit unit, A attachment, CompletionHandler<Long, ? super A> handler) {
+        Callable<Object> function = new Callable<Object>() {
+            @Override
+            public Object call() throws IOException {
+                return unwrap(dsts, offset, length);
+            }
+        };
+        read0(function, timeout, unit, attachment, handler);
+    }
+
+    @Override
+    public Future<Integer> write(ByteBuffer src) {
+        FutureCompletionHandler<Integer> fut = new FutureCompletionHandler<Integer>();
+        write(src, 0L, TimeUnit.MILLISECONDS, null, fut);
+        return fut;
+    }
+
+    @Override
+    public <A> void write(ByteBuffer src, long timeout, TimeUnit unit, A attachment, CompletionHandler<Integer, ? super A> handler) {
+        write0(new Wrap(new ByteBuffer[]{src}, 0, 1, true), timeout, unit, attachment, handler);
+    }
+
+    @Override
+    public <A> void write(ByteBuffer[] srcs, int offset, int length, long timeout, TimeUnit unit, A attachment, CompletionHandler<Long, ? super A> handler) {
+        write0(new Wrap(srcs, offset, length, false), timeout, unit, attachment, handler);
+    }
+
+    @Override
+    public Future<Long> transferTo(long position, long count, WritableByteChannel target) {
+        throw new UnsupportedOperationException("transferTo() bypasses TLS");
+    }
+
+    @Override
+    public <A> void transferTo(long position, long count, WritableByteChannel target, long timeout, TimeUnit unit, A attachment, CompletionHandler<Long, ? super A> handler) {
+        throw new UnsupportedOperationException("transferTo() bypasses TLS");
+    }
+
+    @Override
+    public Future<Long> transferFrom(ReadableByteChannel source, long position, long count) {
+        throw new UnsupportedOperationException("transferFrom() bypasses TLS");
+    }
+
+    @Override
+    public <A> void transferFrom(ReadableByteChannel source, long position, long count, long timeout, TimeUnit unit, A attachment, CompletionHandler<Long, ? super A> handler) {
+        throw new UnsupportedOperationException("transferFrom() bypasses TLS");
+    }
+
+    /**
+     * Sends close_notify (best effort) before closing the transport.
+     */
+    @Override
+    public AsynchronousSocketChannel shutdownOutput() throws IOException {
+        synchronized (lock) {
+            if (engine != null && !engine.isOutboundDone()) {
+                engine.closeOutbound();
+                engine.wrap(EMPTY, netOut);
+                flush();
+            }
+        }
+        channel.shutdownOutput();
+        return this;
+    }
+
+    @Override
+    public AsynchronousSocketChannel shutdownInput() throws IOException {
+        channel.shutdownInput();
+        return this;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed && channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (engine != null && !engine.isOutboundDone()) {
+                    engine.closeOutbound();
+                    engine.wrap(EMPTY, netOut);
+                    flush();
+                }
+            } catch (IOException e) {
+                // Peer may already be gone, close_notify is best effort
+                if (LOG.isDebugEnabled())
+                    LOG.debug("close(): {0}", e);
+            } finally {
+                try {
+                    channel.close();
+                } finally {
+                    release();
+                }
+            }
+        }
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() throws IOException {
+        return channel.getLocalAddress();
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() throws IOException {
+        return channel.getRemoteAddress();
+    }
+
+    @Override
+    public <V> V getOption(SocketOption<V> name) throws IOException {
+        return channel.getOption(name);
+    }
+
+    @Override
+    public <T> AsynchronousSocketChannel setOption(SocketOption<T> name, T value) throws IOException {
+        channel.setOption(name, value);
+        return this;
+    }
+
+    @Override
+    public Set<SocketOption<?>> supportedOptions() {
+        return channel.supportedOptions();
+    }
+
+    /**
+     * Read path: the unwrap runs in the dispatcher. Bytes left over from a
+     * previous record do not make the socket readable again, so the
+     * dispatcher is asked to retry the read right away when there are any.
+     */
+    private <V, A> void read0(final Callable<Object> function, final long timeout, final TimeUnit unit, final A attachment, final CompletionHandler<V, ? super A> handler) {
+        if (!awaitHandshake(new Runnable() {
+            @Override
+            public void run() {
+                read0(function, timeout, unit, attachment, handler);
+            }
+        }, attachment, handler)) {
+            return;
+        }
+
+        channel.impl.readWhenReady(function, timeout, unit, attachment, handler);
+
+        boolean buffered;
+        synchronized (lock) {
+            buffered = appIn != null && (appIn.position() > 0 || netIn.position() > 0);
+        }
+        if (buffered) {
+            retryRead();
+        }
+    }
+
+    private <V, A> void write0(final Wrap function, final long timeout, final TimeUnit unit, final A attachment, final CompletionHandler<V, ? super A> handler) {
+        if (!awaitHandshake(new Runnable() {
+            @Override
+            public void run() {
+                write0(function, timeout, unit, attachment, handler);
+            }
+        }, attachment, handler)) {
+            return;
+        }
+        synchronized (lock) {
+            if (flushing) {
+                if (deferredWrite != null) {
+                    completeLater(handler, attachment, new WritePendingException(), null);
+                    return;
+                }
+                // Runs once the engine's own records are out
+                deferredWrite = new Runnable() {
+                    @Override
+                    public void run() {
+                        write0(function, timeout, unit, attachment, handler);
+                    }
+                };
+                return;
+            }
+        }
+        channel.impl.writeWhenReady(function, timeout, unit, attachment, handler);
+    }
+
+    /**
+     * Returns true if the handshake is done; otherwise starts it (if needed)
+     * and runs the operation once it completes.
+     */
+    private <A> boolean awaitHandshake(final Runnable operation, A attachment, final CompletionHandler<?, ? super A> handler) {
+        synchronized (lock) {
+            if (handshaken) {
+                return true;
+            }
+        }
+        handshake(attachment, new CompletionHandler<Void, A>() {
+            @Override
+            public void completed(Void result, A attachment) {
+                operation.run();
+            }
+
+            @Override
+            public void failed(Throwable exc, A attachment) {
+                handler.failed(exc, attachment);
+            }
+        });
+        return false;
+    }
+
+    private void begin() throws IOException {
+        synchronized (lock) {
+            if (closed)
+                throw new ClosedChannelException();
+
+            engine = sessions.newEngine(clientMode, channel.getRemoteAddress());
+            SSLSession session = engine.getSession();
+            netIn = acquire(session.getPacketBufferSize());
+            netOut = acquire(session.getPacketBufferSize());
+            appIn = acquire(session.getApplicationBufferSize());
+            engine.beginHandshake();
+        }
+    }
+
+    private void finishHandshake(Throwable error) {
+        List<Waiter<?>> done;
+        synchronized (lock) {
+            handshaking = false;
+            if (error == null) {
+                handshaken = true;
+            } else {
+                handshakeError = error;
+            }
+            done = new ArrayList<Waiter<?>>(waiters);
+            waiters.clear();
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Handshake finished: {0} [Error = {1}]", channel, error);
+
+        for (Waiter<?> waiter : done) {
+            waiter.complete(error);
+        }
+    }
+
+    /**
+     * Advances the handshake as far as possible without blocking.
+     */
+    private Object handshakeStep() throws IOException {
+        synchronized (lock) {
+            if (closed)
+                throw new ClosedChannelException();
+
+            while (true) {
+                if (!flush()) {
+                    return NEED_WRITE;
+                }
+
+                HandshakeStatus status = engine.getHandshakeStatus();
+                switch (status) {
+                    case NOT_HANDSHAKING:
+                    case FINISHED:
+                        return DONE;
+
+                    case NEED_TASK:
+                        return NEED_TASK;
+
+                    case NEED_WRAP:
+                        SSLEngineResult res = engine.wrap(EMPTY, netOut);
+                        if (res.getStatus() == SSLEngineResult.Status.CLOSED)
+                            throw new SSLException("Engine closed during handshake");
+                        if (res.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                            netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+                        }
+                        break;
+
+                    default:  // <= NEED_UNWRAP (and NEED_UNWRAP_AGAIN on JDK9+)
+                        netIn.flip();
+                        res = engine.unwrap(netIn, appIn);
+                        netIn.compact();
+
+                        switch (res.getStatus()) {
+                            case BUFFER_UNDERFLOW:
+                                if (!netIn.hasRemaining()) {
+                                    netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+                                }
+                                int n = channel.getSocketChannel().read(netIn);
+                                if (n < 0)
+                                    throw new EOFException("Connection closed during handshake");
+                                if (n == 0) {
+                                    return NEED_READ;
+                                }
+                                break;
+                            case BUFFER_OVERFLOW:
+                                appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+                                break;
+                            case CLOSED:
+                                throw new SSLException("Engine closed during handshake");
+                            default:
+                        }
+                }
+            }
+        }
+    }
+
+    private void runDelegatedTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Runs the delegated tasks of a post-handshake message on the notifier
+     * pool, then answers it if needed and retries the pending read.
+     */
+    private void runDelegatedTasksLater() {
+        if (tasksRunning) {
+            return;
+        }
+        tasksRunning = true;
+        group.execute(new Runnable() {
+            @Override
+            public void run() {
+                runDelegatedTasks();
+                synchronized (lock) {
+                    tasksRunning = false;
+                    if (closed) {
+                        return;
+                    }
+                    try {
+                        wrapPostHandshake();
+                    } catch (IOException e) {
+                        // The pending read fails on its own
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("wrapPostHandshake(): {0}", e);
+                    }
+                }
+                retryRead();
+            }
+        });
+    }
+
+    /**
+     * Answers post-handshake messages (e.g. key updates), leaving what the
+     * socket does not take to be flushed once it is writable again.
+     */
+    private void wrapPostHandshake() throws IOException {
+        if (engine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP) {
+            engine.wrap(EMPTY, netOut);
+        }
+        if (!flush()) {
+            flushWhenReady();
+        }
+    }
+
+    private void flushWhenReady() {
+        if (flushing) {
+            return;
+        }
+        flushing = true;
+        try {
+            channel.impl.writeWhenReady(new Callable<Object>() {
+                @Override
+                public Object call() throws IOException {
+                    synchronized (lock) {
+                        if (closed)
+                            throw new ClosedChannelException();
+                        return flush() ? (Object) Long.valueOf(0) : DispatchableChannelBase.NOT_READY;
+                    }
+                }
+            }, 0L, TimeUnit.MILLISECONDS, null, new CompletionHandler<Long, Void>() {
+                @Override
+                public void completed(Long result, Void attachment) {
+                    flushed();
+                }
+
+                @Override
+                public void failed(Throwable exc, Void attachment) {
+                    flushed();
+                }
+            });
+        } catch (WritePendingException e) {
+            // A pending write flushes netOut before wrapping anything else
+            flushing = false;
+        }
+    }
+
+    private void flushed() {
+        Runnable write;
+        synchronized (lock) {
+            flushing = false;
+            write = deferredWrite;
+            deferredWrite = null;
+        }
+        if (write != null) {
+            write.run();
+        }
+    }
+
+    // Runs the pending read (if any) again on the dispatcher thread
+    private void retryRead() {
+        final DispatchableSocketChannel impl = channel.impl;
+        try {
+            impl.dispatcher().execute(new Runnable() {
+                @Override
+                public void run() {
+                    impl.onReadReady();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Dispatcher shut down, the pending read fails with the channel
+        }
+    }
+
+    /**
+     * Drains decrypted bytes into the destination buffers, unwrapping
+     * records from the socket as needed.
+     *
+     * @return the number of bytes read, -1 at end of stream, or NOT_READY
+     */
+    private Object unwrap(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        synchronized (lock) {
+            if (closed)
+                throw new ClosedChannelException();
+            if (ByteBuffers.remaining(dsts, offset, length) == 0) {
+                return 0L;
+            }
+
+            long n = drain(dsts, offset, length);
+            if (n > 0) {
+                return n;
+            }
+
+            while (true) {
+                netIn.flip();
+                SSLEngineResult res = engine.unwrap(netIn, appIn);
+                netIn.compact();
+
+                // Post-handshake messages (session tickets, key updates)
+                if (res.getHandshakeStatus() == HandshakeStatus.NEED_TASK) {
+                    runDelegatedTasksLater();
+                    return (appIn.position() > 0) ? drain(dsts, offset, length) : DispatchableChannelBase.NOT_READY;
+                }
+                wrapPostHandshake();
+
+                switch (res.getStatus()) {
+                    case OK:
+                        if (appIn.position() > 0) {
+                            return drain(dsts, offset, length);
+                        }
+                        break;
+
+                    case BUFFER_UNDERFLOW:
+                        if (!netIn.hasRemaining()) {
+                            netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+                        }
+                        int r = channel.getSocketChannel().read(netIn);
+                        if (r < 0) {
+                            closeInbound();
+                            return -1L;
+                        }
+                        if (r == 0) {
+                            return DispatchableChannelBase.NOT_READY;
+                        }
+                        break;
+
+                    case BUFFER_OVERFLOW:
+                        if (appIn.position() > 0) {
+                            return drain(dsts, offset, length);
+                        }
+                        appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+                        break;
+
+                    default:  // <= CLOSED (close_notify received)
+                        return (appIn.position() > 0) ? drain(dsts, offset, length) : -1L;
+                }
+            }
+        }
+    }
+
+    private long drain(ByteBuffer[] dsts, int offset, int length) {
+        if (appIn.position() == 0) {
+            return 0;
+        }
+        appIn.flip();
+        long n = ByteBuffers.transfer(appIn, dsts, offset, length);
+        appIn.compact();
+        return n;
+    }
+
+    private void closeInbound() {
+        try {
+            engine.closeInbound();
+        } catch (SSLException e) {
+            // Truncation: peer closed without close_notify
+            if (LOG.isDebugEnabled())
+                LOG.debug("closeInbound(): {0}", e);
+        }
+    }
+
+    /**
+     * Writes out pending encrypted bytes.
+     *
+     * @return true once netOut is empty
+     */
+    private boolean flush() throws IOException {
+        if (netOut.position() == 0) {
+            return true;
+        }
+        netOut.flip();
+        channel.getSocketChannel().write(netOut);
+        netOut.compact();
+        return netOut.position() == 0;
+    }
+
+    private ByteBuffer acquire(int size) {
+        return (size <= POOLED_BUFFER_SIZE) ? PACKET_POOL.acquire() : ByteBuffer.allocateDirect(size);
+    }
+
+    private ByteBuffer enlarge(ByteBuffer buf, int size) {
+        ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(size, buf.capacity() * 2));
+        buf.flip();
+        larger.put(buf);
+        PACKET_POOL.release(buf);
+        return larger;
+    }
+
+    private void release() {
+        PACKET_POOL.release(netIn);
+        PACKET_POOL.release(netOut);
+        PACKET_POOL.release(appIn);
+        netIn = netOut = appIn = null;
+    }
+
+    private <V, A> void completeLater(final CompletionHandler<V, ? super A> handler, final A attachment, final Throwable error, final Object result) {
+        group.execute(new Runnable() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void run() {
+                if (error != null) {
+                    handler.failed(error, attachment);
+                } else {
+                    handler.completed((V) result, attachment);
+                }
+            }
+        });
+    }
+
+    /**
+     * Write path: wraps the sources into netOut and only completes once the
+     * resulting records have been flushed to the socket.
+     */
+    private class Wrap implements Callable<Object> {
+
+        private final ByteBuffer[] srcs;
+        private final int offset;
+        private final int length;
+        private final boolean single;
+
+        private long consumed;
+
+        Wrap(ByteBuffer[] srcs, int offset, int length, boolean single) {
+            this.srcs = srcs;
+            this.offset = offset;
+            this.length = length;
+            this.single = single;
+        }
+
+        @Override
+        public Object call() throws IOException {
+            synchronized (lock) {
+                if (closed)
+                    throw new ClosedChannelException();
+
+                while (true) {
+                    if (!flush()) {
+                        return DispatchableChannelBase.NOT_READY;
+                    }
+                    if (consumed > 0 || ByteBuffers.remaining(srcs, offset, length) == 0) {
+                        return single ? (Object) Integer.valueOf((int) consumed) : (Object) Long.valueOf(consumed);
+                    }
+
+                    SSLEngineResult res;
+                    do {
+                        res = engine.wrap(srcs, offset, length, netOut);
+                        if (res.getStatus() == SSLEngineResult.Status.CLOSED)
+                            throw new SSLException("Engine closed");
+                        consumed += res.bytesConsumed();
+                    } while (res.getStatus() == SSLEngineResult.Status.OK && res.bytesConsumed() > 0
+                            && ByteBuffers.remaining(srcs, offset, length) > 0);
+
+                    if (res.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW && netOut.position() == 0) {
+                        netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Drives the handshake across dispatcher wakeups and delegated tasks.
+     */
+    private class Handshake implements CompletionHandler<Object, Void> {
+
+        void proceed(Object state) {
+            try {
+                if (state == null) {
+                    state = handshakeStep();
+                }
+                if (state == DONE) {
+                    finishHandshake(null);
+                } else if (state == NEED_TASK) {
+                    group.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            runDelegatedTasks();
+                            proceed(null);
+                        }
+                    });
+                } else if (state == NEED_READ) {
+                    channel.impl.readWhenReady(new Step(NEED_READ), 0L, TimeUnit.MILLISECONDS, null, this);
+                } else {
+                    channel.impl.writeWhenReady(new Step(NEED_WRITE), 0L, TimeUnit.MILLISECONDS, null, this);
+                }
+            } catch (Throwable e) {
+                finishHandshake(e);
+            }
+        }
+
+        @Override
+        public void completed(Object state, Void attachment) {
+            proceed(state);
+        }
+
+        @Override
+        public void failed(Throwable exc, Void attachment) {
+            finishHandshake(exc);
+        }
+    }
+
+    /**
+     * Handshake step run by the dispatcher, re-armed while still blocked on
+     * the same readiness.
+     */
+    private class Step implements Callable<Object> {
+
+        private final Object blockedOn;
+
+        Step(Object blockedOn) {
+            this.blockedOn = blockedOn;
+        }
+
+        @Override
+        public Object call() throws IOException {
+            Object state = handshakeStep();
+            return (state == blockedOn) ? DispatchableChannelBase.NOT_READY : state;
+        }
+    }
+
+    private static class Waiter<A> {
+
+        private final A attachment;
+        private final CompletionHandler<Void, ? super A> handler;
+
+        Waiter(A attachment, CompletionHandler<Void, ? super A> handler) {
+            this.attachment = attachment;
+            this.handler = handler;
+        }
+
+        void complete(Throwable error) {
+            if (error != null) {
+                handler.failed(error, attachment);
+            } else {
+                handler.completed(null, attachment);
+            }
+        }
+    }
+}
@@ -2,11 +2,13 @@ package async.nio.channels.impl;
 
 import async.nio.util.Logger;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
-public class AsyncThreadFactory implements ThreadFactory {
+public class AsyncThreadFactory implements ThreadFactory, ForkJoinPool.ForkJoinWorkerThreadFactory {
 
     AtomicInteger count;
     String gid;
@@ -27,7 +29,16 @@ public class AsyncThreadFactory implements ThreadFactory {
 
     @Override
     public Thread newThread(Runnable r) {
-        Thread t = new Thread(r);
+        return setup(new Thread(r));
+    }
+
+    @Override
+    public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        return setup(new ForkJoinWorkerThread(pool) {
+        });
+    }
+
+    private <T extends Thread> T setup(T t) {
         t.setName("AsyncChannelGroup[" + gid + "].worker[" + count.getAndIncrement() + "]");
         t.setDaemon(true);
         t.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
@@ -0,0 +1,122 @@
+package async.nio.channels.impl;
+
+import async.nio.dispatchables.DispatchableChannels.DispatchableChannel;
+import async.nio.dispatchers.ChannelDispatcher;
+import async.nio.util.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrent registry of the channels owned by an AsyncChannelGroup.
+ * <p/>
+ * Channels are striped by the dispatcher that serves them, so add/remove
+ * are O(1) and only touch that dispatcher's stripe, and live counts per
+ * dispatcher come for free. Iteration is weakly consistent: channels added
+ * or removed during a bulk operation may or may not be visited.
+ */
+public class ChannelRegistry {
+
+    private static final Logger LOG = Logger.getLogger(ChannelRegistry.class);
+
+    public interface Visitor {
+
+        void visit(DispatchableChannel<?> channel);
+    }
+
+    private static class Stripe {
+
+        final ConcurrentMap<DispatchableChannel<?>, Boolean> channels = new ConcurrentHashMap<DispatchableChannel<?>, Boolean>();
+        final AtomicInteger count = new AtomicInteger();
+    }
+
+    private final ConcurrentMap<ChannelDispatcher<?>, Stripe> stripes = new ConcurrentHashMap<ChannelDispatcher<?>, Stripe>();
+    private final AtomicInteger count = new AtomicInteger();
+
+    public boolean add(ChannelDispatcher<?> dispatcher, DispatchableChannel<?> channel) {
+        Stripe stripe = stripe(dispatcher);
+        if (stripe.channels.putIfAbsent(channel, Boolean.TRUE) != null) {
+            return false;
+        }
+        stripe.count.incrementAndGet();
+        count.incrementAndGet();
+        return true;
+    }
+
+    public boolean remove(ChannelDispatcher<?> dispatcher, DispatchableChannel<?> channel) {
+        Stripe stripe = stripes.get(dispatcher);
+        if (stripe == null || stripe.channels.remove(channel) == null) {
+            return false;
+        }
+        stripe.count.decrementAndGet();
+        count.decrementAndGet();
+        return true;
+    }
+
+    public int size() {
+        return count.get();
+    }
+
+    public int size(ChannelDispatcher<?> dispatcher) {
+        Stripe stripe = stripes.get(dispatcher);
+        return stripe == null ? 0 : stripe.count.get();
+    }
+
+    public void forEach(Visitor visitor) {
+        for (Stripe stripe : stripes.values()) {
+            visit(stripe, visitor);
+        }
+    }
+
+    public void forEach(ChannelDispatcher<?> dispatcher, Visitor visitor) {
+        Stripe stripe = stripes.get(dispatcher);
+        if (stripe != null) {
+            visit(stripe, visitor);
+        }
+    }
+
+    /**
+     * Closes every registered channel. Channels unregister themselves once
+     * their dispatcher has processed the close.
+     */
+    public int closeAll() {
+        final AtomicInteger closed = new AtomicInteger();
+        forEach(new Visitor() {
+            @Override
+            public void visit(DispatchableChannel<?> channel) {
+                try {
+                    channel.close();
+                    closed.incrementAndGet();
+                } catch (IOException ex) {
+                    // This should not stop shutdown
+                    // so discard problematic channels
+                    LOG.severe("closeAll(): {0}", ex);
+                }
+            }
+        });
+        return closed.get();
+    }
+
+    public void clear() {
+        stripes.clear();
+        count.set(0);
+    }
+
+    private Stripe stripe(ChannelDispatcher<?> dispatcher) {
+        Stripe stripe = stripes.get(dispatcher);
+        if (stripe != null) {
+            return stripe;
+        }
+        Stripe newStripe = new Stripe(); // May discard.
+        Stripe oldStripe = stripes.putIfAbsent(dispatcher, newStripe);
+        return oldStripe == null ? newStripe : oldStripe;
+    }
+
+    private static void visit(Stripe stripe, Visitor visitor) {
+        for (DispatchableChannel<?> channel : stripe.channels.keySet()) {
+            visitor.visit(channel);
+        }
+    }
+}
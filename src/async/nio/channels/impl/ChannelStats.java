@@ -0,0 +1,113 @@
+package async.nio.channels.impl;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Per-channel I/O counters.
+ * <p/>
+ * Every update is forwarded to the owning group's GroupStats. Per-channel
+ * fields (and queue wait timing) are only maintained for sampled channels,
+ * so that high-cardinality deployments only pay for the group aggregates.
+ * Channel counters are effectively single-writer and use uncontended
+ * field updaters rather than striped adders.
+ */
+public class ChannelStats {
+
+    private static final AtomicLongFieldUpdater<ChannelStats> BYTES_READ = AtomicLongFieldUpdater.newUpdater(ChannelStats.class, "bytesRead");
+    private static final AtomicLongFieldUpdater<ChannelStats> BYTES_WRITTEN = AtomicLongFieldUpdater.newUpdater(ChannelStats.class, "bytesWritten");
+    private static final AtomicLongFieldUpdater<ChannelStats> COMPLETED = AtomicLongFieldUpdater.newUpdater(ChannelStats.class, "completed");
+    private static final AtomicLongFieldUpdater<ChannelStats> FAILED = AtomicLongFieldUpdater.newUpdater(ChannelStats.class, "failed");
+    private static final AtomicLongFieldUpdater<ChannelStats> TIMEDOUT = AtomicLongFieldUpdater.newUpdater(ChannelStats.class, "timedOut");
+    private static final AtomicLongFieldUpdater<ChannelStats> QUEUE_WAIT = AtomicLongFieldUpdater.newUpdater(ChannelStats.class, "queueWait");
+
+    private final GroupStats group;
+    private final boolean sampled;
+
+    private volatile long bytesRead;
+    private volatile long bytesWritten;
+    private volatile long completed;
+    private volatile long failed;
+    private volatile long timedOut;
+    private volatile long queueWait;
+
+    ChannelStats(GroupStats group, boolean sampled) {
+        this.group = group;
+        this.sampled = sampled;
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    public void read(long bytes) {
+        if (sampled) {
+            COMPLETED.incrementAndGet(this);
+            if (bytes > 0)
+                BYTES_READ.addAndGet(this, bytes);
+        }
+        group.read(bytes);
+    }
+
+    public void written(long bytes) {
+        if (sampled) {
+            COMPLETED.incrementAndGet(this);
+            if (bytes > 0)
+                BYTES_WRITTEN.addAndGet(this, bytes);
+        }
+        group.written(bytes);
+    }
+
+    public void completed() {
+        if (sampled)
+            COMPLETED.incrementAndGet(this);
+        group.completed();
+    }
+
+    public void failed() {
+        if (sampled)
+            FAILED.incrementAndGet(this);
+        group.failed();
+    }
+
+    public void timedOut() {
+        if (sampled)
+            TIMEDOUT.incrementAndGet(this);
+        group.timedOut();
+    }
+
+    public void queueWait(long nanos) {
+        if (sampled)
+            QUEUE_WAIT.addAndGet(this, nanos);
+        group.queueWait(nanos);
+    }
+
+    public long bytesRead() {
+        return bytesRead;
+    }
+
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    public long opsCompleted() {
+        return completed;
+    }
+
+    public long opsFailed() {
+        return failed;
+    }
+
+    public long opsTimedOut() {
+        return timedOut;
+    }
+
+    public long queueWaitNanos() {
+        return queueWait;
+    }
+
+    @Override
+    public String toString() {
+        return "bytesRead=" + bytesRead + ", bytesWritten=" + bytesWritten + ", completed=" + completed
+                + ", failed=" + failed + ", timedOut=" + timedOut + ", queueWaitNs=" + queueWait;
+    }
+}
@@ -3,6 +3,7 @@ package async.nio.channels.impl;
 import java.io.IOException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
@@ -30,7 +31,19 @@ public class Defaults {
         return new AsyncThreadFactory(name);
     }
 
+    /**
+     * Notifier pool in async (FIFO) mode: every worker has its own queue and
+     * idle workers steal from busy ones, so completions submitted from the
+     * dispatchers do not all contend on one shared queue lock.
+     */
+    public static ExecutorService forkJoinNotifierService(int parallelism, String name) {
+        return new ForkJoinPool(parallelism, new AsyncThreadFactory(name), null, true);
+    }
+
     private static ExecutorService defaultNotifierService() {
+        if (Boolean.getBoolean(FORKJOIN_NOTIFIER)) {
+            return forkJoinNotifierService(Defaults.defaultNotifierThreads(), values[3]);
+        }
         return Executors.newFixedThreadPool(Defaults.defaultNotifierThreads(),
                 new AsyncThreadFactory(values[3]));
     }
@@ -69,6 +82,8 @@ public class Defaults {
     }
 
 
+    public static final String FORKJOIN_NOTIFIER = "async.nio.defaults.DEFAULT_NOTIFIER_FORKJOIN";
+
     private static String[] values = new String[]{
             "async.nio.defaults.DEFAULT_CHANNEL_DISPATCHERS",
             "async.nio.defaults.DEFAULT_CHANNEL_NOTIFIER_THREADS",
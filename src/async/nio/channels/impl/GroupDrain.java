@@ -0,0 +1,213 @@
+package async.nio.channels.impl;
+
+import async.nio.channels.system.Futures.FutureResult;
+import async.nio.dispatchables.DispatchableChannels.DispatchableChannel;
+import async.nio.util.Logger;
+
+import java.io.IOException;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Graceful drain of an AsyncChannelGroup.
+ * <p/>
+ * Runs as a periodic task on the group timer and moves through the
+ * following phases without ever blocking the timer thread:
+ * <ol>
+ * <li>STOP_ACCEPTING: the group is already flagged as shutdown, so pending
+ * accepts fail and no new channels can be opened.</li>
+ * <li>AWAIT_IN_FLIGHT: channels with completions still queued for delivery
+ * are left alone, since their handlers may issue follow-up writes.</li>
+ * <li>FLUSH_WRITES: channels with a pending write are left alone until it
+ * completes or the deadline passes. Channels left with only a pending read
+ * are waiting on their peer, so they are closed right away and counted
+ * apart.</li>
+ * <li>CLOSING: every remaining channel is closed (quiescent channels are
+ * closed as soon as they are found, the rest once the deadline passes) and
+ * the drain waits for their dispatchers to process the close.</li>
+ * </ol>
+ * The counters are live and may be polled while the drain is running.
+ */
+public class GroupDrain extends TimerTask {
+
+    private static final Logger LOG = Logger.getLogger(GroupDrain.class);
+
+    public enum Phase {
+        STOP_ACCEPTING, AWAIT_IN_FLIGHT, FLUSH_WRITES, CLOSING, TERMINATED
+    }
+
+    private final AsyncChannelGroup group;
+    private final FutureResult<GroupDrain> future;
+
+    private final long deadline;
+    private final long closeGracePeriod;
+    private long closeDeadline;
+
+    private volatile Phase phase = Phase.STOP_ACCEPTING;
+
+    private final AtomicInteger channels = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger pendingReads = new AtomicInteger();
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+    private final AtomicInteger closedQuiescent = new AtomicInteger();
+    private final AtomicInteger closedReading = new AtomicInteger();
+    private final AtomicInteger closedForcibly = new AtomicInteger();
+
+    GroupDrain(AsyncChannelGroup group, long timeout, TimeUnit unit, long closeGracePeriod) {
+        this.group = group;
+        this.future = new FutureResult<GroupDrain>();
+        this.deadline = System.nanoTime() + unit.toNanos(timeout);
+        this.closeGracePeriod = TimeUnit.MILLISECONDS.toNanos(closeGracePeriod);
+    }
+
+    public FutureResult<GroupDrain> future() {
+        return future;
+    }
+
+    public Phase phase() {
+        return phase;
+    }
+
+    public int channelsAtStart() {
+        return channels.get();
+    }
+
+    public int channelsRemaining() {
+        return group.channels().size();
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public int pendingReads() {
+        return pendingReads.get();
+    }
+
+    public int pendingWrites() {
+        return pendingWrites.get();
+    }
+
+    public int closedQuiescent() {
+        return closedQuiescent.get();
+    }
+
+    // Channels closed with a read still pending
+    public int closedReading() {
+        return closedReading.get();
+    }
+
+    public int closedForcibly() {
+        return closedForcibly.get();
+    }
+
+    @Override
+    public void run() {
+        try {
+            drain(System.nanoTime());
+        } catch (Exception e) {
+            LOG.warn("GroupDrain: {0}", e);
+            terminate();
+        }
+    }
+
+    @SuppressWarnings("fallthrough")
+    private void drain(long now) {
+        switch (phase) {
+            case STOP_ACCEPTING:
+                channels.set(group.channels().size());
+                phase = Phase.AWAIT_IN_FLIGHT;
+                // Fall through
+
+            case AWAIT_IN_FLIGHT:
+            case FLUSH_WRITES:
+                if (!scan(now >= deadline)) {
+                    phase = inFlight.get() > 0 ? Phase.AWAIT_IN_FLIGHT : Phase.FLUSH_WRITES;
+                    return;
+                }
+                phase = Phase.CLOSING;
+                closeDeadline = now + closeGracePeriod;
+                // Fall through
+
+            case CLOSING:
+                if (group.channels().size() > 0 && now < closeDeadline) {
+                    return;
+                }
+                terminate();
+                return;
+
+            default:
+                cancel();
+        }
+    }
+
+    /**
+     * Closes quiescent channels (all of them when forced) and returns true
+     * once no channel is left busy.
+     */
+    private boolean scan(final boolean force) {
+        final AtomicInteger busy = new AtomicInteger();
+        final AtomicInteger notifying = new AtomicInteger();
+        final AtomicInteger reading = new AtomicInteger();
+        final AtomicInteger writing = new AtomicInteger();
+
+        group.channels().forEach(new ChannelRegistry.Visitor() {
+            @Override
+            public void visit(DispatchableChannel<?> channel) {
+                if (channel.isClosing()) {
+                    return;
+                }
+                if (channel.hasPendingNotifications()) {
+                    notifying.incrementAndGet();
+                } else if (channel.hasPendingWrites()) {
+                    writing.incrementAndGet();
+                } else if (channel.hasPendingReads()) {
+                    reading.incrementAndGet();
+                    close(channel, closedReading);
+                    return;
+                } else {
+                    close(channel, closedQuiescent);
+                    return;
+                }
+                if (force) {
+                    close(channel, closedForcibly);
+                } else {
+                    busy.incrementAndGet();
+                }
+            }
+        });
+
+        inFlight.set(notifying.get());
+        pendingReads.set(reading.get());
+        pendingWrites.set(writing.get());
+        return busy.get() == 0;
+    }
+
+    private void close(DispatchableChannel<?> channel, AtomicInteger counter) {
+        try {
+            channel.close();
+            counter.incrementAndGet();
+        } catch (IOException e) {
+            LOG.warn("GroupDrain close(): {0}", e);
+        }
+    }
+
+    private void terminate() {
+        cancel();
+        phase = Phase.TERMINATED;
+        try {
+            group.terminate();
+        } finally {
+            future.set(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "GroupDrain[phase=" + phase + ", channels=" + channels + ", remaining=" + channelsRemaining()
+                + ", inFlight=" + inFlight + ", pendingReads=" + pendingReads + ", pendingWrites=" + pendingWrites
+                + ", closedQuiescent=" + closedQuiescent + ", closedReading=" + closedReading
+                + ", closedForcibly=" + closedForcibly + "]";
+    }
+}
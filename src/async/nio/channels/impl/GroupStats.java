@@ -0,0 +1,286 @@
+package async.nio.channels.impl;
+
+import async.nio.dispatchables.DispatchableChannels.DispatchableChannel;
+import async.nio.dispatchers.SelectorHealth;
+import async.nio.util.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * AsyncChannelGroup-wide I/O counters, exposed through JMX as
+ * <code>async.nio:type=AsyncChannelGroup,name=&lt;group&gt;</code>.
+ * <p/>
+ * Aggregates are striped counters updated by every channel of the group.
+ * Per-channel counters are kept for one in every <code>sampleRate</code>
+ * channels (all channels by default, none when set to 0).
+ */
+public class GroupStats implements GroupStatsMBean {
+
+    private static final Logger LOG = Logger.getLogger(GroupStats.class);
+
+    private final AsyncChannelGroup group;
+    private final String name;
+
+    private final Counter bytesRead = new Counter();
+    private final Counter bytesWritten = new Counter();
+    private final Counter completed = new Counter();
+    private final Counter failed = new Counter();
+    private final Counter timedOut = new Counter();
+    private final Counter queueWait = new Counter();
+    private final Counter queueWaitSamples = new Counter();
+
+    private final AtomicInteger sequence = new AtomicInteger();
+    private volatile int sampleRate = 1;
+
+    private ObjectName objectName;
+
+    GroupStats(AsyncChannelGroup group, String name) {
+        this.group = group;
+        this.name = name;
+    }
+
+    public ChannelStats newChannelStats() {
+        int rate = sampleRate;
+        boolean sampled = rate > 0 && (sequence.getAndIncrement() % rate) == 0;
+        return new ChannelStats(this, sampled);
+    }
+
+    void read(long bytes) {
+        completed.increment();
+        if (bytes > 0)
+            bytesRead.add(bytes);
+    }
+
+    void written(long bytes) {
+        completed.increment();
+        if (bytes > 0)
+            bytesWritten.add(bytes);
+    }
+
+    void completed() {
+        completed.increment();
+    }
+
+    void failed() {
+        failed.increment();
+    }
+
+    void timedOut() {
+        timedOut.increment();
+    }
+
+    void queueWait(long nanos) {
+        queueWait.add(nanos);
+        queueWaitSamples.increment();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getChannels() {
+        return group.channels().size();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getOpsCompleted() {
+        return completed.sum();
+    }
+
+    @Override
+    public long getOpsFailed() {
+        return failed.sum();
+    }
+
+    @Override
+    public long getOpsTimedOut() {
+        return timedOut.sum();
+    }
+
+    @Override
+    public long getQueueWaitNanos() {
+        return queueWait.sum();
+    }
+
+    @Override
+    public long getQueueWaitSamples() {
+        return queueWaitSamples.sum();
+    }
+
+    @Override
+    public long getPrematureSelects() {
+        long n = 0;
+        for (SelectorHealth health : group.selectorHealth()) {
+            n += health.prematureSelects();
+        }
+        return n;
+    }
+
+    @Override
+    public long getSelectorRebuilds() {
+        long n = 0;
+        for (SelectorHealth health : group.selectorHealth()) {
+            n += health.rebuilds();
+        }
+        return n;
+    }
+
+    @Override
+    public long getSelectorKeysMigrated() {
+        long n = 0;
+        for (SelectorHealth health : group.selectorHealth()) {
+            n += health.keysMigrated();
+        }
+        return n;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Applies to channels opened after the change.
+     */
+    @Override
+    public void setSampleRate(int rate) {
+        if (rate < 0)
+            throw new IllegalArgumentException("Invalid sample rate: " + rate);
+        sampleRate = rate;
+    }
+
+    /**
+     * Returns the sampled channels that moved the most bytes.
+     */
+    @Override
+    public String[] topChannels(int count) {
+        final List<DispatchableChannel<?>> sampled = new ArrayList<DispatchableChannel<?>>();
+        group.channels().forEach(new ChannelRegistry.Visitor() {
+            @Override
+            public void visit(DispatchableChannel<?> channel) {
+                if (channel.stats().isSampled()) {
+                    sampled.add(channel);
+                }
+            }
+        });
+
+        Collections.sort(sampled, new Comparator<DispatchableChannel<?>>() {
+            @Override
+            public int compare(DispatchableChannel<?> a, DispatchableChannel<?> b) {
+                long x = total(a.stats()), y = total(b.stats());
+                return (x < y) ? 1 : ((x == y) ? 0 : -1);
+            }
+        });
+
+        int n = Math.max(0, Math.min(count, sampled.size()));
+        String[] top = new String[n];
+        for (int i = 0; i < n; i++) {
+            DispatchableChannel<?> channel = sampled.get(i);
+            top[i] = channel.getSelectableChannel() + " { " + channel.stats() + " }";
+        }
+        return top;
+    }
+
+    @Override
+    public void reset() {
+        bytesRead.reset();
+        bytesWritten.reset();
+        completed.reset();
+        failed.reset();
+        timedOut.reset();
+        queueWait.reset();
+        queueWaitSamples.reset();
+    }
+
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("async.nio:type=AsyncChannelGroup,name=" + ObjectName.quote(name));
+            server.registerMBean(this, objectName);
+        } catch (Exception e) {
+            // Monitoring must never prevent a group from starting
+            objectName = null;
+            LOG.warn("GroupStats register(): {0}", e);
+        }
+    }
+
+    void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+            LOG.warn("GroupStats unregister(): {0}", e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    private static long total(ChannelStats stats) {
+        return stats.bytesRead() + stats.bytesWritten();
+    }
+
+    /**
+     * Counter striped over padded AtomicLongArray slots, indexed by thread id,
+     * so that dispatcher threads rarely contend on the same cache line.
+     */
+    static class Counter {
+
+        private static final int PAD = 8;   // longs per 64-byte cache line
+        private static final int STRIPES;
+
+        static {
+            int n = 1;
+            while (n < Runtime.getRuntime().availableProcessors() * 2) {
+                n <<= 1;
+            }
+            STRIPES = n;
+        }
+
+        private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+
+        void add(long x) {
+            int i = (int) Thread.currentThread().getId() & (STRIPES - 1);
+            cells.addAndGet(i * PAD, x);
+        }
+
+        void increment() {
+            add(1);
+        }
+
+        long sum() {
+            long sum = 0;
+            for (int i = 0; i < STRIPES; i++) {
+                sum += cells.get(i * PAD);
+            }
+            return sum;
+        }
+
+        void reset() {
+            for (int i = 0; i < STRIPES; i++) {
+                cells.set(i * PAD, 0);
+            }
+        }
+    }
+}
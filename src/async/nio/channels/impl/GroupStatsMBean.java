@@ -0,0 +1,36 @@
+package async.nio.channels.impl;
+
+public interface GroupStatsMBean {
+
+    String getName();
+
+    int getChannels();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    long getOpsCompleted();
+
+    long getOpsFailed();
+
+    long getOpsTimedOut();
+
+    long getQueueWaitNanos();
+
+    long getQueueWaitSamples();
+
+    long getPrematureSelects();
+
+    long getSelectorRebuilds();
+
+    long getSelectorKeysMigrated();
+
+    int getSampleRate();
+
+    void setSampleRate(int rate);
+
+    String[] topChannels(int count);
+
+    void reset();
+}
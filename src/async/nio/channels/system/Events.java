@@ -36,6 +36,12 @@ public class Events {
         public V result;
         public Throwable error;
 
+        // System.nanoTime() at which the event was queued for notification, or 0
+        public long queuedAt;
+
+        public void dequeued(long waitNanos) {
+        }
+
         public void set(V result) {
             this.result = result;
         }
@@ -14,24 +14,29 @@ public class Futures {
         }
     };
 
-    public static class FutureResult<T> extends FutureTask {
+    @SuppressWarnings("unchecked")
+    static <T> Callable<T> noop() {
+        return (Callable<T>) (Callable<?>) NOOP;
+    }
+
+    public static class FutureResult<T> extends FutureTask<T> {
 
         public FutureResult() {
-            super(NOOP);
+            super(Futures.<T>noop());
         }
 
         public FutureResult(Throwable t) {
-            super(NOOP);
+            super(Futures.<T>noop());
             setException(t);
         }
 
-        public FutureResult(Object v) {
-            super(NOOP);
+        public FutureResult(T v) {
+            super(Futures.<T>noop());
             set(v);
         }
 
         @Override
-        public final void set(Object v) {
+        public final void set(T v) {
             super.set(v);
         }
 
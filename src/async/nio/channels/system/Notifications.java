@@ -5,11 +5,14 @@ import async.nio.channels.Exceptions.InterruptedByTimeoutException;
 import async.nio.channels.system.Events.PendingEvent;
 import async.nio.channels.system.Events.State;
 
-import java.util.concurrent.ExecutorService;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Notifications {
 
-    public static <V, A> void send(ExecutorService notifier, PendingEvent<V> event, A attachment, CompletionHandler<V, A> handler) {
+    public static <V, A> void send(Executor notifier, PendingEvent<V> event, A attachment, CompletionHandler<V, A> handler) {
         notifier.execute(handler(event, attachment, handler));
     }
 
@@ -24,6 +27,11 @@ public class Notifications {
     private static <V, A> void handle(final PendingEvent<V> event, final A attachment, final CompletionHandler<V, A> handler) {
         try {
 
+            if (event.queuedAt != 0) {
+                event.dequeued(System.nanoTime() - event.queuedAt);
+                event.queuedAt = 0;
+            }
+
             Throwable error = event.error;
             V result = event.result;
 
@@ -60,6 +68,63 @@ public class Notifications {
         }
     }
 
+    /**
+     * Runs its tasks one at a time, in submission order, on an underlying
+     * (shared) executor: an "actor" mailbox with no lock. Giving every
+     * channel its own SerialExecutor serializes that channel's completions
+     * while different channels still complete in parallel.
+     * <p/>
+     * A task must never block waiting for a later task of the same executor
+     * (e.g. a completion handler calling get() on another operation of its
+     * own channel), as that task only runs once the current one returns.
+     */
+    public static class SerialExecutor implements Executor, Runnable {
+
+        // Tasks run per turn before yielding the worker to other executors
+        public static final int MAX_BATCH = 64;
+
+        private final Executor executor;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        public SerialExecutor(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+            schedule();
+        }
+
+        @Override
+        public void run() {
+            try {
+                Runnable task;
+                for (int i = 0; i < MAX_BATCH && (task = tasks.poll()) != null; i++) {
+                    task.run();
+                }
+            } finally {
+                scheduled.set(false);
+                if (!tasks.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                executor.execute(this);
+            } catch (RuntimeException e) {
+                scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
     private Notifications() {
     } // Singleton
 }
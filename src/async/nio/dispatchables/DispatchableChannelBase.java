@@ -3,8 +3,10 @@ package async.nio.dispatchables;
 import async.nio.channels.AsyncChannels.CompletionHandler;
 import async.nio.channels.Exceptions.InterruptedByTimeoutException;
 import async.nio.channels.Exceptions.ReadPendingException;
+import async.nio.channels.Exceptions.ShutdownChannelGroupException;
 import async.nio.channels.Exceptions.WritePendingException;
 import async.nio.channels.impl.AsyncChannelGroup;
+import async.nio.channels.impl.ChannelStats;
 import async.nio.channels.impl.Defaults;
 import async.nio.channels.system.Events.State;
 import async.nio.channels.system.Futures.FutureCompletionHandler;
@@ -21,15 +23,22 @@ import java.nio.ByteBuffer;
 import java.nio.channels.*;
 import java.util.TimerTask;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 public abstract class DispatchableChannelBase<T extends SelectableChannel> implements DispatchableChannel {
 
     protected static Logger LOG = Logger.getLogger(DispatchableChannelBase.class);// .setDebug(true);
+
+    // Returned by event functions when readiness turned out to be spurious
+    // (e.g. no datagram queued) and the operation should be re-armed.
+    public static final Object NOT_READY = new Object();
+
     protected T channel;
 
     protected AsyncChannelGroup group;
     protected ChannelDispatcher dispatcher;
+    protected ChannelStats stats;
 
     volatile PendingConnectEvent connect;
     volatile PendingIOEvent read;
@@ -38,6 +47,10 @@ public abstract class DispatchableChannelBase<T extends SelectableChannel> imple
     protected volatile int interests;
     protected volatile Boolean shutdown = false;
 
+    // System.nanoTime() of the last readiness or completed I/O, read by the
+    // owning dispatcher
+    protected volatile long lastActivity;
+
     public DispatchableChannelBase(AsyncChannelGroup group, T ch) throws IOException {
         if (ch == null)
             throw new IOException("Invalid or Missing channel: " + ch);
@@ -50,17 +63,48 @@ public abstract class DispatchableChannelBase<T extends SelectableChannel> imple
         };
 
         this.group = (group == null) ? Defaults.defaultGroup() : group;
-        this.dispatcher = group.getChannelDispatcher();
+        this.dispatcher = this.group.getChannelDispatcher();
+
+        this.stats = this.group.stats().newChannelStats();
+        this.connect.stats = stats;
+        this.read.stats = stats;
+        this.write.stats = stats;
+
+        Executor notifier = this.group.newChannelNotifier(dispatcher);
+        this.connect.notifier = notifier;
+        this.read.notifier = notifier;
+        this.write.notifier = notifier;
 
         this.channel = ch;
         this.channel.configureBlocking(false);
     }
 
+    /**
+     * Registers the channel with its group, once fully constructed.
+     *
+     * @throws ShutdownChannelGroupException if the group is shut down
+     */
+    public void register() {
+        group.register(dispatcher, this);
+    }
+
     @Override
     public SelectableChannel getSelectableChannel() {
         return channel;
     }
 
+    public AsyncChannelGroup group() {
+        return group;
+    }
+
+    /**
+     * Returns the dispatcher serving this channel. Tasks executed on it run
+     * on the thread that performs the channel's I/O.
+     */
+    public ChannelDispatcher<?> dispatcher() {
+        return dispatcher;
+    }
+
     @Override
     public void interestOps(int ops) {
         interests = ops;
@@ -76,6 +120,54 @@ public abstract class DispatchableChannelBase<T extends SelectableChannel> imple
         return !shutdown || channel.isOpen();
     }
 
+    @Override
+    public boolean isClosing() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean hasPendingReads() {
+        return read.isPending();
+    }
+
+    @Override
+    public boolean hasPendingWrites() {
+        return write.isPending();
+    }
+
+    @Override
+    public boolean hasPendingNotifications() {
+        return connect.getState() == State.NOTIFICATION_READY
+                || read.getState() == State.NOTIFICATION_READY
+                || write.getState() == State.NOTIFICATION_READY;
+    }
+
+    @Override
+    public void lastActivity(long now) {
+        lastActivity = now;
+    }
+
+    @Override
+    public long lastActivity() {
+        return lastActivity;
+    }
+
+    @Override
+    public void onIdle() {
+        synchronized (read) {
+            if (!read.compareAndSet(State.PENDING, State.TIMEDOUT)) {
+                return;
+            }
+            stats.timedOut();
+            group.notifyError(read, new InterruptedByTimeoutException());
+        }
+    }
+
+    @Override
+    public ChannelStats stats() {
+        return stats;
+    }
+
     @Override
     public synchronized void close() throws IOException {
         if (shutdown) {
@@ -137,8 +229,15 @@ public abstract class DispatchableChannelBase<T extends SelectableChannel> imple
             return;
 
         try {
-            notify(event, event.whenReady());
+            Object res = event.whenReady();
+            if (res == NOT_READY) {
+                dispatch(event == write ? InterestOps.OP_WRITE : InterestOps.OP_READ);
+                return;
+            }
+            notify(event, res);
         } catch (IOException e) {
+            // The failed operation sees the cause, the others the close
+            notifyError(event, e);
             close(e);
         } catch (Exception e) {
             notifyError(event, e);
@@ -152,6 +251,7 @@ public abstract class DispatchableChannelBase<T extends SelectableChannel> imple
         notifyError(read, e);
         notifyError(write, e);
 
+        group.unregister(dispatcher, this);
         cleanup();
     }
 
@@ -314,14 +414,15 @@ public abstract class DispatchableChannelBase<T extends SelectableChannel> imple
             public void run() {
                 synchronized (event) {
 
-                    if (!event.isPending()) {
+                    if (!event.compareAndSet(State.PENDING, State.TIMEDOUT)) {
                         return;
                     }
 
-                    LOG.debug(event.getClass().getSimpleName() + ": Request timed out." + "[Timeout = " + timeout + " "
-                            + unit.name() + ", " + "Thread = " + Thread.currentThread().getName() + "], ");
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("{0}: Request timed out. [Timeout = {1} {2}, Thread = {3}]",
+                                event.getClass().getSimpleName(), timeout, unit.name(), Thread.currentThread().getName());
 
-                    event.setTimedout();
+                    stats.timedOut();
                     group.notifyError(event, new InterruptedByTimeoutException());
 
                 }
@@ -333,19 +434,36 @@ public abstract class DispatchableChannelBase<T extends SelectableChannel> imple
      * Channel Listener Notification methods
      */
     protected void notify(PendingChannelEvent event, Object res) {
-        if (event == null || !event.isPending()) {
+        if (event == null || !event.compareAndSet(State.PENDING, State.NOTIFICATION_READY)) {
             return;
         }
-        event.setState(State.NOTIFICATION_READY);
+        // Completions may also happen off the dispatcher thread
+        lastActivity = System.nanoTime();
+        record(event, res);
         group.notify(event, res);
     }
 
     protected void notifyError(PendingChannelEvent event, Throwable err) {
-        if (event == null || !event.isPending()) {
+        if (event == null || !event.compareAndSet(State.PENDING, State.NOTIFICATION_READY)) {
             return;
         }
-        event.setState(State.NOTIFICATION_READY);
+        stats.failed();
         group.notifyError(event, err);
     }
 
+    protected long transferred(Object res) {
+        return (res instanceof Number) ? ((Number) res).longValue() : 0;
+    }
+
+    private void record(PendingChannelEvent<?> event, Object res) {
+        long bytes = transferred(res);
+        if (event == read) {
+            stats.read(bytes);
+        } else if (event == write) {
+            stats.written(bytes);
+        } else {
+            stats.completed();
+        }
+    }
+
 }
@@ -1,9 +1,11 @@
 package async.nio.dispatchables;
 
 import async.nio.channels.AsyncChannels.CompletionHandler;
+import async.nio.channels.impl.ChannelStats;
 import async.nio.channels.system.Events.PendingEvent;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
 public class DispatchableChannelEvents {
 
@@ -22,11 +24,21 @@ public class DispatchableChannelEvents {
         public Callable<V> function;
         public Object attachment;
         public CompletionHandler handler;
+        public ChannelStats stats;
+        // Completes on the group's notifier pool if null
+        public Executor notifier;
 
         public PendingChannelEvent() {
             super();
         }
 
+        @Override
+        public void dequeued(long waitNanos) {
+            if (stats != null) {
+                stats.queueWait(waitNanos);
+            }
+        }
+
         public V whenReady() throws Exception {
             return function.call();
         }
@@ -1,5 +1,7 @@
 package async.nio.dispatchables;
 
+import async.nio.channels.impl.ChannelStats;
+
 import java.nio.channels.Channel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
@@ -32,6 +34,22 @@ public class DispatchableChannels {
         void onReadReady();
 
         void onWriteReady();
+
+        boolean isClosing();
+
+        boolean hasPendingReads();
+
+        boolean hasPendingWrites();
+
+        boolean hasPendingNotifications();
+
+        void lastActivity(long now);
+
+        long lastActivity();
+
+        void onIdle();
+
+        ChannelStats stats();
     }
 
     public interface DispatchableServerChannel<T> extends Dispatchable, Channel {
@@ -0,0 +1,180 @@
+package async.nio.dispatchables;
+
+import async.nio.channels.AsyncChannels.CompletionHandler;
+import async.nio.channels.AsyncChannels.NetworkChannel;
+import async.nio.channels.AsyncDatagramChannels.DatagramBatch;
+import async.nio.channels.impl.AsyncChannelGroup;
+import async.nio.channels.system.Futures.FutureCompletionHandler;
+import async.nio.net.SocketOption;
+import async.nio.net.SocketOptions;
+import async.nio.net.StandardSocketOptions;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class DispatchableDatagramChannel extends DispatchableChannelBase<DatagramChannel> implements NetworkChannel {
+
+    @SuppressWarnings("serial")
+    private static final Set<SocketOption<?>> defaultSocketOptions = Collections.unmodifiableSet(new HashSet<SocketOption<?>>() {
+        {
+            add(StandardSocketOptions.SO_SNDBUF);
+            add(StandardSocketOptions.SO_RCVBUF);
+            add(StandardSocketOptions.SO_REUSEADDR);
+            add(StandardSocketOptions.SO_BROADCAST);
+            add(StandardSocketOptions.IP_TOS);
+            add(StandardSocketOptions.SO_TIMEOUT);
+        }
+    });
+
+    // Bytes moved by the last single-datagram receive (read by the dispatcher thread)
+    private int received;
+
+    public DispatchableDatagramChannel(AsyncChannelGroup group, DatagramChannel channel) throws IOException {
+        super(group, channel);
+    }
+
+    protected DatagramChannel getDatagramChannel() {
+        return channel;
+    }
+
+    @Override
+    public NetworkChannel bind(SocketAddress local) throws IOException {
+        if (shutdown || channel == null)
+            throw new ClosedChannelException();
+
+        channel.socket().bind(local);
+        return this;
+    }
+
+    public void connect(SocketAddress remote) throws IOException {
+        channel.connect(remote);
+    }
+
+    public void disconnect() throws IOException {
+        channel.disconnect();
+    }
+
+    public boolean isConnected() {
+        return channel.isConnected();
+    }
+
+    public Future<SocketAddress> receive(ByteBuffer dst) {
+        FutureCompletionHandler<SocketAddress> fut = new FutureCompletionHandler<SocketAddress>();
+        receive(dst, 0, TimeUnit.MILLISECONDS, null, fut);
+        return fut;
+    }
+
+    public <A> void receive(final ByteBuffer dst, long timeout, TimeUnit unit, A attachment, CompletionHandler<SocketAddress, ? super A> handler) {
+        Callable<Object> function = new Callable<Object>() {
+            @Override
+            public Object call() throws IOException {
+                int pos = dst.position();
+                SocketAddress source = channel.receive(dst);
+                if (source == null) {
+                    return NOT_READY;
+                }
+                received = dst.position() - pos;
+                return source;
+            }
+        };
+        read0(function, timeout, unit, attachment, handler, false);
+    }
+
+    public Future<Integer> send(ByteBuffer src, SocketAddress target) {
+        FutureCompletionHandler<Integer> fut = new FutureCompletionHandler<Integer>();
+        send(src, target, 0, TimeUnit.MILLISECONDS, null, fut);
+        return fut;
+    }
+
+    public <A> void send(final ByteBuffer src, final SocketAddress target, long timeout, TimeUnit unit, A attachment, CompletionHandler<Integer, ? super A> handler) {
+        Callable<Object> function = new Callable<Object>() {
+            @Override
+            public Object call() throws IOException {
+                int len = src.remaining();
+                int n = (target == null) ? channel.write(src) : channel.send(src, target);
+                return (n == 0 && len > 0) ? NOT_READY : Integer.valueOf(n);
+            }
+        };
+        write0(function, timeout, unit, attachment, handler);
+    }
+
+    public Future<DatagramBatch> receive(DatagramBatch batch) {
+        FutureCompletionHandler<DatagramBatch> fut = new FutureCompletionHandler<DatagramBatch>();
+        receive(batch, 0, TimeUnit.MILLISECONDS, null, fut);
+        return fut;
+    }
+
+    public <A> void receive(final DatagramBatch batch, long timeout, TimeUnit unit, A attachment, CompletionHandler<DatagramBatch, ? super A> handler) {
+        if (batch.isFull())
+            throw new IllegalArgumentException("DatagramBatch is full");
+
+        Callable<Object> function = new Callable<Object>() {
+            @Override
+            public Object call() throws IOException {
+                return (batch.receiveFrom(channel) == 0) ? NOT_READY : batch;
+            }
+        };
+        read0(function, timeout, unit, attachment, handler, false);
+    }
+
+    public Future<Integer> send(DatagramBatch batch) {
+        FutureCompletionHandler<Integer> fut = new FutureCompletionHandler<Integer>();
+        send(batch, 0, TimeUnit.MILLISECONDS, null, fut);
+        return fut;
+    }
+
+    public <A> void send(final DatagramBatch batch, long timeout, TimeUnit unit, A attachment, CompletionHandler<Integer, ? super A> handler) {
+        Callable<Object> function = new Callable<Object>() {
+            @Override
+            public Object call() throws IOException {
+                return batch.sendTo(channel) ? Integer.valueOf(batch.size()) : NOT_READY;
+            }
+        };
+        write0(function, timeout, unit, attachment, handler);
+    }
+
+    @Override
+    protected long transferred(Object res) {
+        if (res instanceof DatagramBatch) {
+            return ((DatagramBatch) res).bytes();
+        }
+        if (res instanceof SocketAddress) {
+            return received;
+        }
+        return super.transferred(res);
+    }
+
+    @Override
+    public <T> NetworkChannel setOption(SocketOption<T> name, T value) throws IOException {
+        SocketOptions.setDatagramOption(channel, name, value);
+        return this;
+    }
+
+    @Override
+    public <T> T getOption(SocketOption<T> name) throws IOException {
+        return SocketOptions.getDatagramOption(channel, name);
+    }
+
+    @Override
+    public Set<SocketOption<?>> supportedOptions() {
+        return defaultSocketOptions;
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() throws IOException {
+        return channel.socket().getLocalSocketAddress();
+    }
+
+    public SocketAddress getRemoteAddress() throws IOException {
+        return channel.socket().getRemoteSocketAddress();
+    }
+}
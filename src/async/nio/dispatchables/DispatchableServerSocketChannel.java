@@ -4,6 +4,7 @@ import async.nio.channels.AsyncChannels.CompletionHandler;
 import async.nio.channels.AsyncChannels.NetworkChannel;
 import async.nio.channels.AsyncSocketChannels.AsynchronousSocketChannel;
 import async.nio.channels.Exceptions.AcceptPendingException;
+import async.nio.channels.Exceptions.ShutdownChannelGroupException;
 import async.nio.channels.impl.AsyncChannelGroup;
 import async.nio.channels.impl.AsyncSocketChannel;
 import async.nio.channels.impl.Defaults;
@@ -60,6 +61,7 @@ public class DispatchableServerSocketChannel implements DispatchableServerChanne
         this.dispatchers = new ServerChannelDispatchers<ServerChannelDispatcher>(DISPATCHERS);
         this.accept = new PendingAcceptEvent<AsynchronousSocketChannel>() {
         };
+        this.accept.notifier = this.group.newChannelNotifier(null);
     }
 
     protected AsyncChannelGroup group() {
@@ -109,6 +111,9 @@ public class DispatchableServerSocketChannel implements DispatchableServerChanne
     }
 
     public <A> void accept(A attachment, CompletionHandler<AsynchronousSocketChannel, ? super A> handler) {
+        if (group.isShutdown()) {
+            throw new ShutdownChannelGroupException();
+        }
         if (!accept.compareAndSet(State.READY, State.PENDING)) {
             throw new AcceptPendingException();
         }
@@ -148,6 +153,12 @@ public class DispatchableServerSocketChannel implements DispatchableServerChanne
         // Set event notification ready status
         accept.setState(State.NOTIFICATION_READY);
 
+        // Stop accepting once the group is shutting down (or draining)
+        if (group.isShutdown()) {
+            group.notifyError(accept, new ShutdownChannelGroupException());
+            return;
+        }
+
         try {
             // Listen for incoming connections
             SocketChannel ch = schannel.accept();
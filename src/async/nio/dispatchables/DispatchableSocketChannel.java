@@ -2,6 +2,7 @@ package async.nio.dispatchables;
 
 import async.nio.channels.AsyncChannels.CompletionHandler;
 import async.nio.channels.AsyncChannels.NetworkChannel;
+import async.nio.channels.AsyncSocketChannels.FrameCodec;
 import async.nio.channels.impl.AsyncChannelGroup;
 import async.nio.channels.system.Futures.FutureCompletionHandler;
 import async.nio.net.SocketOption;
@@ -9,6 +10,7 @@ import async.nio.net.SocketOptions;
 import async.nio.net.StandardSocketOptions;
 import async.nio.util.Nio.ByteBuffers;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.SocketAddress;
@@ -16,6 +18,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.*;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
@@ -141,6 +144,99 @@ public class DispatchableSocketChannel extends DispatchableChannelBase<SocketCha
         write0(function, timeout, unit, attachment, handler);
     }
 
+    /**
+     * Reads into <code>in</code> (in fill mode) until it holds at least one
+     * complete frame, then completes with every complete frame decoded on
+     * this wakeup. Decoding runs on the dispatcher thread, so partial reads
+     * never reach the notifier. On return the buffer is left in drain mode,
+     * positioned past the last frame delivered.
+     * <p/>
+     * Completes with an empty list at end of stream, or fails with an
+     * EOFException if the stream ends in the middle of a frame.
+     */
+    public <A> void readFrames(final FrameCodec codec, final ByteBuffer in, final List<ByteBuffer> frames, long timeout, TimeUnit unit, A attachment, CompletionHandler<List<ByteBuffer>, ? super A> handler) {
+        Callable<Object> function = new Callable<Object>() {
+
+            // Bytes of the pending frame already examined by the codec, so
+            // that each wakeup only decodes what was just read
+            private int scanned;
+
+            @Override
+            public Object call() throws IOException {
+                int n = channel.read(in);
+
+                in.flip();
+                ByteBuffer frame;
+                while ((frame = codec.decode(in, scanned)) != null) {
+                    frames.add(frame);
+                    scanned = 0;
+                }
+                if (!frames.isEmpty()) {
+                    return frames;
+                }
+                scanned = in.remaining();
+
+                boolean partial = in.hasRemaining();
+                in.position(in.limit());
+                in.limit(in.capacity());
+                if (n < 0) {
+                    if (partial)
+                        throw new EOFException("Stream ended within a frame");
+                    return frames;
+                }
+                if (!in.hasRemaining())
+                    throw new IOException("Frame exceeds buffer capacity (" + in.capacity() + ")");
+                return NOT_READY;
+            }
+        };
+        read0(function, timeout, unit, attachment, handler, false);
+    }
+
+    /**
+     * Gathering write that only completes once every buffer has been fully
+     * written; partial writes are resumed by the dispatcher.
+     */
+    public <A> void writeFully(final ByteBuffer[] srcs, final int offset, final int length, long timeout, TimeUnit unit, A attachment, CompletionHandler<Long, ? super A> handler) {
+        final long total = ByteBuffers.remaining(srcs, offset, length);
+        Callable<Object> function = new Callable<Object>() {
+            @Override
+            public Object call() throws IOException {
+                channel.write(srcs, offset, length);
+                return (ByteBuffers.remaining(srcs, offset, length) > 0) ? NOT_READY : Long.valueOf(total);
+            }
+        };
+        write0(function, timeout, unit, attachment, handler);
+    }
+
+    /**
+     * Runs the function on the dispatcher thread each time the channel is
+     * readable until it returns something other than NOT_READY, and
+     * completes the handler with that result. Lets protocol layers (e.g.
+     * TLS) consume socket bytes in the dispatcher.
+     */
+    public <V, A> void readWhenReady(Callable<?> function, long timeout, TimeUnit unit, A attachment, CompletionHandler<V, ? super A> handler) {
+        read0(function, timeout, unit, attachment, handler, false);
+    }
+
+    /**
+     * Write-side counterpart of readWhenReady.
+     */
+    public <V, A> void writeWhenReady(Callable<?> function, long timeout, TimeUnit unit, A attachment, CompletionHandler<V, ? super A> handler) {
+        write0(function, timeout, unit, attachment, handler);
+    }
+
+    @Override
+    protected long transferred(Object res) {
+        if (res instanceof List) {
+            long bytes = 0;
+            for (Object frame : (List<?>) res) {
+                bytes += ((ByteBuffer) frame).remaining();
+            }
+            return bytes;
+        }
+        return super.transferred(res);
+    }
+
     public Future<Long> transferTo(long position, long count, WritableByteChannel target) {
         FutureCompletionHandler<Long> fut = new FutureCompletionHandler<Long>();
         transferTo(position, count, target, 0, TimeUnit.MILLISECONDS, null, fut);
@@ -1,10 +1,34 @@
 package async.nio.dispatchers;
 
-public interface ChannelDispatcher<T> {
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+public interface ChannelDispatcher<T> extends Executor {
 
     boolean registerInterestFor(T channel);
 
     void wakeup();
 
     void shutdown();
+
+    /**
+     * Runs the task on the dispatcher thread, between selects. State only
+     * touched from dispatcher tasks (and I/O callbacks run by the dispatcher)
+     * needs no locking. Tasks accepted before a shutdown still run.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException if the
+     *         dispatcher has been shut down
+     */
+    void execute(Runnable task);
+
+    /**
+     * Runs the task on the dispatcher thread once the delay has elapsed.
+     * Tasks not yet due when the dispatcher shuts down are cancelled.
+     */
+    ScheduledTask schedule(Runnable task, long delay, TimeUnit unit);
+
+    /**
+     * Returns true if called from this dispatcher's thread.
+     */
+    boolean inDispatcherThread();
 }
@@ -4,25 +4,47 @@ import async.nio.dispatchables.DispatchableChannels;
 import async.nio.util.Logger;
 
 import java.nio.channels.SelectionKey;
+import java.util.concurrent.TimeUnit;
 
-public class ClientChannelDispatcher extends SimpleChannelDispatcher<DispatchableChannels.DispatchableChannel> {
+public class ClientChannelDispatcher extends SimpleChannelDispatcher<DispatchableChannels.DispatchableChannel<?>> {
 
     protected final Logger LOG = Logger.getLogger(getClass());
 
+    private volatile long idleTimeout;
+    private volatile IdleReaper.Policy idlePolicy;
+    private volatile boolean idleChanged;
+
+    // Confined to the dispatcher thread
+    private IdleReaper reaper;
+
     public ClientChannelDispatcher(String name) {
         super(name);
     }
 
+    /**
+     * Enables (timeout > 0) or disables (timeout <= 0) idle-connection
+     * reaping for the channels served by this dispatcher.
+     */
+    public void setIdleTimeout(long timeout, TimeUnit unit, IdleReaper.Policy policy) {
+        idleTimeout = (timeout <= 0) ? 0 : unit.toNanos(timeout);
+        idlePolicy = policy;
+        idleChanged = true;
+        wakeup();
+    }
+
     @Override
-    public void handleIO(DispatchableChannels.DispatchableChannel channel, SelectionKey key) {
+    public void handleIO(DispatchableChannels.DispatchableChannel<?> channel, SelectionKey key) {
 
         if (!key.isValid())
             return;
 
+        channel.lastActivity(now());
+
         if (key.isWritable()) {
             int ops = key.interestOps() & ~SelectionKey.OP_WRITE;
             key.interestOps(ops);
             channel.interestOps(ops);
+            rearm(channel, key, channel.hasPendingReads() ? SelectionKey.OP_READ : 0);
             channel.onWriteReady();
         }
 
@@ -37,8 +59,65 @@ public class ClientChannelDispatcher extends SimpleChannelDispatcher<Dispatchabl
             int ops = key.interestOps() & ~SelectionKey.OP_READ;
             key.interestOps(ops);
             channel.interestOps(ops);
+            rearm(channel, key, channel.hasPendingWrites() ? SelectionKey.OP_WRITE : 0);
             channel.onReadReady();
         }
 
     }
-}
\ No newline at end of file
+
+    /**
+     * Restores an interest registered by a concurrent read or write while
+     * the channel's interest ops were being overwritten, rather than lose it.
+     */
+    protected void rearm(DispatchableChannels.DispatchableChannel<?> channel, SelectionKey key, int ops) {
+        if ((key.interestOps() & ops) != ops) {
+            key.interestOps(key.interestOps() | ops);
+            channel.interestOps(channel.interestOps() | ops);
+        }
+    }
+
+    @Override
+    protected void onKeyCreated(DispatchableChannels.DispatchableChannel<?> channel, SelectionKey key) {
+        if (reaper != null) {
+            reaper.add(channel, now());
+        }
+    }
+
+    @Override
+    protected void processTimers(long now) {
+        if (idleChanged) {
+            idleChanged = false;
+            resetReaper(now);
+        }
+        if (reaper != null) {
+            reaper.sweep(now);
+        }
+    }
+
+    @Override
+    protected long nextDeadline() {
+        if (idleChanged) {
+            return now();
+        }
+        return (reaper != null) ? reaper.nextDeadline() : Long.MAX_VALUE;
+    }
+
+    private void resetReaper(long now) {
+        if (reaper != null) {
+            reaper.clear();
+            reaper = null;
+        }
+        if (idleTimeout <= 0) {
+            return;
+        }
+
+        reaper = new IdleReaper(idleTimeout, TimeUnit.NANOSECONDS, idlePolicy, now);
+
+        // Start tracking channels already registered with this dispatcher
+        for (SelectionKey key : keys()) {
+            if (key.isValid() && key.attachment() != null) {
+                reaper.add((DispatchableChannels.DispatchableChannel<?>) key.attachment(), now);
+            }
+        }
+    }
+}
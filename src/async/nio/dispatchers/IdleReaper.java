@@ -0,0 +1,167 @@
+package async.nio.dispatchers;
+
+import async.nio.dispatchables.DispatchableChannels.DispatchableChannel;
+import async.nio.util.Logger;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatcher-confined idle-connection reaper.
+ * <p/>
+ * Channels are kept in a hashed wheel of time buckets keyed by their idle
+ * deadline. Activity only updates the channel's last-activity timestamp;
+ * the wheel is re-checked lazily when a bucket expires, and channels that
+ * saw activity in the meantime are simply moved to a later bucket. Each
+ * sweep is bounded by a batch size so that large bursts of expirations
+ * are spread over several loop iterations.
+ * <p/>
+ * Not thread-safe: must only be used from its dispatcher thread.
+ */
+public class IdleReaper {
+
+    protected static final Logger LOG = Logger.getLogger(IdleReaper.class);
+
+    public enum Policy {
+        CLOSE,  // <= Close idle channels
+        NOTIFY  // <= Fail pending reads with InterruptedByTimeoutException
+    }
+
+    public static final int WHEEL_SIZE = 64;
+    public static final int MAX_BATCH = 1024;
+    public static final long MIN_TICK_NS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final long timeout;
+    private final long tick;
+    private final Policy policy;
+
+    private final ArrayDeque<DispatchableChannel<?>>[] wheel;
+    private final long origin;
+
+    private long cursor;
+    private int size;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public IdleReaper(long timeout, TimeUnit unit, Policy policy, long now) {
+        if (timeout <= 0)
+            throw new IllegalArgumentException("Invalid idle timeout: " + timeout);
+
+        this.timeout = unit.toNanos(timeout);
+        this.tick = Math.max(MIN_TICK_NS, this.timeout / WHEEL_SIZE);
+        this.policy = (policy == null) ? Policy.CLOSE : policy;
+
+        this.wheel = new ArrayDeque[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ArrayDeque<DispatchableChannel<?>>();
+        }
+        this.origin = now;
+        this.cursor = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void add(DispatchableChannel<?> channel, long now) {
+        channel.lastActivity(now);
+        schedule(channel, now + timeout);
+        size++;
+    }
+
+    /**
+     * Sweeps expired buckets, reaping at most MAX_BATCH channels.
+     *
+     * @return the number of channels reaped
+     */
+    public int sweep(long now) {
+        if (size == 0) {
+            cursor = Math.max(cursor, (now - origin) / tick);
+            return 0;
+        }
+
+        int budget = MAX_BATCH;
+        int reaped = 0;
+
+        while (budget > 0 && origin + (cursor + 1) * tick <= now) {
+            ArrayDeque<DispatchableChannel<?>> bucket = wheel[(int) (cursor % WHEEL_SIZE)];
+
+            DispatchableChannel<?> channel;
+            while (budget > 0 && (channel = bucket.poll()) != null) {
+                budget--;
+
+                if (channel.isClosing() || !channel.isOpen()) {
+                    size--;
+                    continue;
+                }
+
+                long deadline = channel.lastActivity() + timeout;
+                if (deadline > now) {
+                    schedule(channel, deadline);
+                    continue;
+                }
+
+                reaped++;
+                if (reap(channel, now)) {
+                    // Channel stays open, start a new idle period
+                    channel.lastActivity(now);
+                    schedule(channel, now + timeout);
+                } else {
+                    size--;
+                }
+            }
+
+            if (bucket.isEmpty()) {
+                cursor++;
+            }
+        }
+        return reaped;
+    }
+
+    /**
+     * Returns the time at which the next bucket expires, or Long.MAX_VALUE
+     * if no channel is being tracked.
+     */
+    public long nextDeadline() {
+        return size == 0 ? Long.MAX_VALUE : origin + (cursor + 1) * tick;
+    }
+
+    public void clear() {
+        for (ArrayDeque<DispatchableChannel<?>> bucket : wheel) {
+            bucket.clear();
+        }
+        size = 0;
+    }
+
+    private void schedule(DispatchableChannel<?> channel, long deadline) {
+        long slot = (deadline - origin) / tick;
+
+        // Never land in the bucket being swept, nor wrap past it
+        if (slot <= cursor) {
+            slot = cursor + 1;
+        } else if (slot >= cursor + WHEEL_SIZE) {
+            slot = cursor + WHEEL_SIZE - 1;
+        }
+        wheel[(int) (slot % WHEEL_SIZE)].add(channel);
+    }
+
+    private boolean reap(DispatchableChannel<?> channel, long now) {
+        if (LOG.isDebugEnabled())
+            LOG.debug("Idle channel reaped: {0} [Idle = {1} ms, Policy = {2}]", channel,
+                    TimeUnit.NANOSECONDS.toMillis(now - channel.lastActivity()), policy);
+        try {
+            switch (policy) {
+                case NOTIFY:
+                    channel.onIdle();
+                    return true;
+
+                default:
+                    channel.close();
+                    return false;
+            }
+        } catch (Exception e) {
+            if (LOG.isWarnEnabled())
+                LOG.warn("reap(): {0}", e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package async.nio.dispatchers;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Task scheduled on a dispatcher with ChannelDispatcher.schedule(), runs at
+ * most once on the dispatcher thread unless cancelled first.
+ */
+public class ScheduledTask implements Runnable, Comparable<ScheduledTask> {
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final Runnable task;
+    private final long deadline;
+    private final long sequence;
+
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    private volatile boolean cancelled;
+
+    ScheduledTask(Runnable task, long deadline) {
+        if (task == null)
+            throw new NullPointerException();
+        this.task = task;
+        this.deadline = deadline;
+        this.sequence = SEQUENCE.getAndIncrement();
+    }
+
+    /**
+     * Returns the System.nanoTime() at which the task becomes due.
+     */
+    public long deadline() {
+        return deadline;
+    }
+
+    /**
+     * @return false if the task already ran (or was already cancelled)
+     */
+    public boolean cancel() {
+        if (!claimed.compareAndSet(false, true)) {
+            return false;
+        }
+        cancelled = true;
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    boolean isDue(long now) {
+        return deadline - now <= 0;
+    }
+
+    @Override
+    public void run() {
+        if (claimed.compareAndSet(false, true)) {
+            task.run();
+        }
+    }
+
+    @Override
+    public int compareTo(ScheduledTask other) {
+        long d = deadline - other.deadline;
+        if (d != 0) {
+            return (d < 0) ? -1 : 1;
+        }
+        return (sequence < other.sequence) ? -1 : ((sequence == other.sequence) ? 0 : 1);
+    }
+}
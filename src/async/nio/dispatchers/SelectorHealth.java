@@ -0,0 +1,123 @@
+package async.nio.dispatchers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selector spin detector and rebuild metrics of one dispatcher.
+ * <p/>
+ * A blocking select that returns no keys although nobody called wakeup()
+ * and its timeout has not (mostly) elapsed is premature. A selector is
+ * considered broken (e.g. the epoll 100% CPU bug) once <code>threshold</code>
+ * premature returns happen back to back within <code>window</code>; any
+ * selected key, wakeup or timed-out select ends the run. Slow or noisy
+ * machines therefore never trigger a rebuild, however short a single
+ * select returns.
+ * <p/>
+ * Written by the dispatcher thread only, counters are readable from any
+ * thread.
+ */
+public class SelectorHealth {
+
+    public static final int DEFAULT_THRESHOLD = 512;
+    public static final long DEFAULT_WINDOW_NS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int threshold;
+    private final long window;
+
+    // Current run of premature returns
+    private int run;
+    private long runStart;
+
+    private volatile long prematureSelects;
+    private volatile long rebuilds;
+    private volatile long keysMigrated;
+    private volatile long lastRebuildNanos;
+    private long rebuildStart;
+
+    public SelectorHealth() {
+        this(DEFAULT_THRESHOLD, DEFAULT_WINDOW_NS, TimeUnit.NANOSECONDS);
+    }
+
+    public SelectorHealth(int threshold, long window, TimeUnit unit) {
+        if (threshold <= 0)
+            throw new IllegalArgumentException("Invalid threshold: " + threshold);
+        if (window <= 0)
+            throw new IllegalArgumentException("Invalid window: " + window);
+
+        this.threshold = threshold;
+        this.window = unit.toNanos(window);
+    }
+
+    /**
+     * Records a blocking select that returned keys.
+     */
+    public void onSelected() {
+        run = 0;
+    }
+
+    /**
+     * Records a blocking select that returned no keys.
+     *
+     * @param startedAt when the select was entered (System.nanoTime())
+     * @param now       when it returned
+     * @param timeout   select timeout in nanoseconds, 0 if unbounded
+     * @param woken     whether wakeup() was called during the select
+     * @return true if the selector should be rebuilt
+     */
+    public boolean onEmptySelect(long startedAt, long now, long timeout, boolean woken) {
+        if (woken || (timeout > 0 && now - startedAt >= timeout / 2)) {
+            run = 0;
+            return false;
+        }
+
+        prematureSelects++;
+        if (run == 0 || now - runStart > window) {
+            run = 0;
+            runStart = now;
+        }
+        if (++run < threshold) {
+            return false;
+        }
+        run = 0;
+        return true;
+    }
+
+    void rebuildStarted(long now) {
+        rebuildStart = now;
+        rebuilds++;
+    }
+
+    void keysMigrated(int keys) {
+        keysMigrated += keys;
+    }
+
+    void rebuildFinished(long now) {
+        lastRebuildNanos = now - rebuildStart;
+    }
+
+    public long prematureSelects() {
+        return prematureSelects;
+    }
+
+    public long rebuilds() {
+        return rebuilds;
+    }
+
+    public long keysMigrated() {
+        return keysMigrated;
+    }
+
+    /**
+     * Time taken by the last (incremental) rebuild, from detection until
+     * every key had been moved.
+     */
+    public long lastRebuildNanos() {
+        return lastRebuildNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "SelectorHealth[prematureSelects=" + prematureSelects + ", rebuilds=" + rebuilds
+                + ", keysMigrated=" + keysMigrated + ", lastRebuildNanos=" + lastRebuildNanos + "]";
+    }
+}
@@ -2,6 +2,8 @@ package async.nio.dispatchers;
 
 import async.nio.dispatchables.DispatchableChannels.Dispatchable;
 import async.nio.dispatchables.DispatchableChannels.InterestOps;
+import async.nio.dispatchers.WaitStrategies.Selection;
+import async.nio.dispatchers.WaitStrategies.WaitStrategy;
 import async.nio.util.Logger;
 import async.nio.util.Selectors;
 
@@ -11,9 +13,14 @@ import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.util.LinkedList;
+import java.util.PriorityQueue;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public abstract class SimpleChannelDispatcher<T extends Dispatchable> implements Runnable, ChannelDispatcher<T> {
     protected final Logger LOG = Logger.getLogger(getClass());// .setDebug(true);
@@ -23,16 +30,57 @@ public abstract class SimpleChannelDispatcher<T extends Dispatchable> implements
     private final Queue<T> open_channels;
     private final BlockingQueue<T> closed_channels;
 
-    private Selector selector;
+    private volatile Selector selector;
+
+    // Installed array-backed selected keys, null if the selector's own set is used
+    private Selectors.SelectedKeySet selectedKeys;
+
+    // Spin detection & incremental selector rebuilds
+    private final SelectorHealth health = new SelectorHealth();
+    private Selectors.Migration migration;
+    private Selectors.SelectedKeySet migrationKeys;
+    private volatile boolean woken;
+
+    private volatile WaitStrategy waitStrategy = WaitStrategies.BLOCKING;
+    private final Selection selection;
+    // Start & timeout (0 if unbounded) of the last blocking select of this iteration
+    private long blockedAt;
+    private long blockedFor;
 
     private long timeout;
     private volatile boolean shutdown;
+    private volatile Thread thread;
+
+    // Submitted by any thread, drained by the dispatcher between selects
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    // Confined to the dispatcher thread
+    private final PriorityQueue<ScheduledTask> scheduled = new PriorityQueue<ScheduledTask>();
+
+    // Loop clock, refreshed once per select
+    private long now;
 
     protected SimpleChannelDispatcher(String name) {
         try {
             this.name = name;
             this.timeout = Defaults.DEFAULT_TIMEOUT;
-            this.selector = Selector.open();
+            this.selector = newSelector();
+            this.selection = new Selection() {
+                @Override
+                public int selectNow() throws IOException {
+                    return SimpleChannelDispatcher.this.selectNow();
+                }
+
+                @Override
+                public int select() throws IOException {
+                    // A polling strategy may have consumed the wakeup()
+                    // of a registration made meanwhile
+                    woken = false;
+                    if (hasPendingWork()) {
+                        return SimpleChannelDispatcher.this.selectNow();
+                    }
+                    return SimpleChannelDispatcher.this.select();
+                }
+            };
             this.open_channels = new LinkedList<T>();
             this.closed_channels = new LinkedBlockingQueue<T>();
         } catch (IOException e) {
@@ -44,6 +92,50 @@ public abstract class SimpleChannelDispatcher<T extends Dispatchable> implements
         return name;
     }
 
+    /**
+     * Sets how this dispatcher waits for readiness (defaults to
+     * WaitStrategies.BLOCKING). Takes effect on the next loop iteration.
+     */
+    public void setWaitStrategy(WaitStrategy strategy) {
+        if (strategy == null)
+            throw new NullPointerException();
+        this.waitStrategy = strategy;
+        wakeup();
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (task == null)
+            throw new NullPointerException();
+        if (shutdown)
+            throw new RejectedExecutionException("Dispatcher shut down: " + name);
+
+        tasks.add(task);
+        // Shut down meanwhile: the task is either taken (and run) by the
+        // final cleanup, or still queued and rejected here
+        if (shutdown && tasks.remove(task))
+            throw new RejectedExecutionException("Dispatcher shut down: " + name);
+        if (!inDispatcherThread()) {
+            wakeup();
+        }
+    }
+
+    @Override
+    public ScheduledTask schedule(Runnable task, long delay, TimeUnit unit) {
+        ScheduledTask scheduledTask = new ScheduledTask(task, System.nanoTime() + unit.toNanos(Math.max(0, delay)));
+        execute(scheduledTask);
+        return scheduledTask;
+    }
+
+    @Override
+    public boolean inDispatcherThread() {
+        return Thread.currentThread() == thread;
+    }
+
     public boolean registerInterestFor(T channel) {
         if (shutdown)
             return false;
@@ -67,11 +159,11 @@ public abstract class SimpleChannelDispatcher<T extends Dispatchable> implements
         if (shutdown) {
             return;
         }
-        LOG.debug("<{0}@{1}> timeout:{2}, selector: {3}", getClass().getSimpleName(), Logger.getHashCode(this), timeout,
-                selector);
+        thread = Thread.currentThread();
 
-        int spinLoops = 0;
-        boolean spinDetect = true;
+        if (LOG.isDebugEnabled())
+            LOG.debug("<{0}@{1}> timeout:{2}, selector: {3}", getClass().getSimpleName(), Logger.getHashCode(this), timeout,
+                    selector);
 
         // Main Dispatcher EventLoop
         while (!shutdown) {
@@ -83,41 +175,90 @@ public abstract class SimpleChannelDispatcher<T extends Dispatchable> implements
                 // Register new requests
                 this.processRegisteredOps();
 
+                // Run submitted and due scheduled tasks
+                this.processTasks(now = System.nanoTime());
+
+                // Run expired timers (idle sweeps, etc.)
+                this.processTimers(now = System.nanoTime());
+
                 // Sleep if required
                 this.sleep();
 
-                // Log spin time.
-                long spinTime = System.nanoTime();
+                // Move the next batch of keys of a selector being rebuilt
+                if (migration != null) {
+                    this.processMigration();
+                }
 
-                // FIXME: Look into more sophisticated spin detection mechanisms
-                if (selector.select() <= 0) {
-                    if (spinDetect && detectSpin(spinTime, spinLoops++)) {
-                        selector = Selectors.replaceSelector(selector);
-                        selector.selectNow();
-                    } else {
-                        continue;
+                // Wait for readiness (only polling while keys are split
+                // between two selectors). Only blocking selects can spin.
+                blockedAt = 0;
+                int selected = (migration != null) ? selectNow() : waitStrategy.waitFor(selection);
+
+                if (blockedAt != 0) {
+                    if (selected > 0) {
+                        health.onSelected();
+                    } else if (health.onEmptySelect(blockedAt, System.nanoTime(), blockedFor, woken || Thread.interrupted())) {
+                        rebuildSelector();
                     }
                 }
-
-                // Selector in good behavior. Reset Selector spin detection checks.
-                if (spinDetect && spinLoops >= Defaults.MAX_SPINS) {
-                    spinLoops = 0;
+                if (selected <= 0) {
+                    continue;
                 }
 
                 // Process I/O requests on selected open_channels
+                now = System.nanoTime();
                 this.processSelectedKeys();
 
             } catch (ClosedSelectorException e) {
-                LOG.debug("DispatcherEventLoop ClosedSelectorException: ", e);
+                if (LOG.isDebugEnabled())
+                    LOG.debug("DispatcherEventLoop ClosedSelectorException: {0}", e);
             } catch (IOException e) {
-                LOG.debug("DispatcherEventLoop IOException: ", e);
+                if (LOG.isDebugEnabled())
+                    LOG.debug("DispatcherEventLoop IOException: {0}", e);
             } catch (Exception e) {
-                LOG.debug("DispatcherEventLoop Exception: ", e);
+                if (LOG.isDebugEnabled())
+                    LOG.debug("DispatcherEventLoop Exception: {0}", e);
             }
         }
 
         cleanup();
-        LOG.info("DispatcherEventLoop Exiting: " + shutdown);
+        LOG.info("DispatcherEventLoop Exiting: {0}", shutdown);
+    }
+
+    protected void processTimers(long now) {
+        // This overridable method allows subclasses to run time-based
+        // work (e.g. idle sweeps) on the dispatcher thread once per loop.
+    }
+
+    /**
+     * Returns the System.nanoTime() at which processTimers() next has work
+     * to do, or Long.MAX_VALUE if nothing is due. Bounds how long the
+     * dispatcher blocks in select().
+     */
+    protected long nextDeadline() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the loop clock (System.nanoTime() of the current iteration).
+     * Only meaningful on the dispatcher thread.
+     */
+    protected long now() {
+        return now;
+    }
+
+    protected Set<SelectionKey> keys() {
+        if (migration != null) {
+            finishMigration();
+        }
+        return selector.keys();
+    }
+
+    /**
+     * Returns this dispatcher's selector spin detection and rebuild metrics.
+     */
+    public SelectorHealth health() {
+        return health;
     }
 
     protected void sleep() {
@@ -127,9 +268,11 @@ public abstract class SimpleChannelDispatcher<T extends Dispatchable> implements
     }
 
     public void wakeup() {
-        if (selector == null)
+        Selector sel = selector;
+        if (sel == null)
             return;
-        selector.wakeup();
+        woken = true;
+        sel.wakeup();
     }
 
     private void processRegisteredOps() {
@@ -158,19 +301,122 @@ public abstract class SimpleChannelDispatcher<T extends Dispatchable> implements
             key.interestOps(key.interestOps() | ops);
 
         } catch (IOException e) {
-            LOG.debug(e.toString());
+            if (LOG.isDebugEnabled())
+                LOG.debug("registerOps(): {0}", e);
+        }
+    }
+
+    /**
+     * Blocks until the nearest deadline (indefinitely if none).
+     */
+    private int select() throws IOException {
+        long start = System.nanoTime();
+        long deadline = nextDeadline();
+        purgeCancelled();
+        if (!scheduled.isEmpty()) {
+            // Long.MAX_VALUE means "none": comparing against it overflows
+            long next = scheduled.peek().deadline();
+            if (deadline == Long.MAX_VALUE || next - deadline < 0) {
+                deadline = next;
+            }
+        }
+        long timeoutMs = 0;
+
+        if (deadline != Long.MAX_VALUE) {
+            long remaining = deadline - start;
+            if (remaining <= 0) {
+                return selectNow();
+            }
+            // Rounded up, select(0) would block indefinitely
+            timeoutMs = (remaining + 999999) / 1000000;
+        }
+        blockedAt = start;
+        blockedFor = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        return selector.select(timeoutMs);
+    }
+
+    private int selectNow() throws IOException {
+        return selector.selectNow();
+    }
+
+    private boolean hasPendingWork() {
+        if (!closed_channels.isEmpty() || !tasks.isEmpty()) {
+            return true;
+        }
+        synchronized (open_channels) {
+            return !open_channels.isEmpty();
         }
     }
 
     private void processSelectedKeys() {
-        for (SelectionKey key : selector.selectedKeys()) {
-            try {
-                handleIO((T) key.attachment(), key);
-            } catch (Exception e) {
-                LOG.warning(e.toString());
+        processSelectedKeys(selector, selectedKeys);
+    }
+
+    private void processSelectedKeys(Selector sel, Selectors.SelectedKeySet keys) {
+        if (keys != null) {
+            for (int i = 0, n = keys.size(); i < n; i++) {
+                processSelectedKey(keys.get(i));
+            }
+            keys.reset();
+        } else {
+            Set<SelectionKey> selected = sel.selectedKeys();
+            for (SelectionKey key : selected) {
+                processSelectedKey(key);
             }
+            selected.clear();
+        }
+    }
+
+    private void processSelectedKey(SelectionKey key) {
+        try {
+            handleIO((T) key.attachment(), key);
+        } catch (Exception e) {
+            if (LOG.isWarnEnabled())
+                LOG.warn("handleIO(): {0}", e);
+        }
+    }
+
+    /**
+     * Runs up to Defaults.MAX_TASKS submitted tasks (so that a task storm
+     * cannot starve I/O), parking the scheduled ones not yet due, then every
+     * due scheduled task.
+     */
+    private void processTasks(long now) {
+        Runnable task;
+        for (int i = 0; i < Defaults.MAX_TASKS && (task = tasks.poll()) != null; i++) {
+            if (task instanceof ScheduledTask && !((ScheduledTask) task).isDue(now)) {
+                if (!((ScheduledTask) task).isCancelled()) {
+                    scheduled.add((ScheduledTask) task);
+                }
+                continue;
+            }
+            runTask(task);
+        }
+
+        ScheduledTask next;
+        purgeCancelled();
+        while ((next = scheduled.peek()) != null && next.isDue(now)) {
+            scheduled.poll();
+            runTask(next);
+            purgeCancelled();
+        }
+    }
+
+    // Cancelled tasks would otherwise set the select timeout until due
+    private void purgeCancelled() {
+        ScheduledTask head;
+        while ((head = scheduled.peek()) != null && head.isCancelled()) {
+            scheduled.poll();
+        }
+    }
+
+    private void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            if (LOG.isWarnEnabled())
+                LOG.warn("Task failed: {0}", e);
         }
-        selector.selectedKeys().clear();
     }
 
     private void processClosedChannels() {
@@ -181,21 +427,53 @@ public abstract class SimpleChannelDispatcher<T extends Dispatchable> implements
                 if (channel == null) break;
                 closeChannel(channel);
             } catch (Exception e) {
-                LOG.debug("Error closing channel");
+                if (LOG.isDebugEnabled())
+                    LOG.debug("processClosedChannels(): {0}", e);
             }
         }
     }
 
     protected abstract void handleIO(T channel, SelectionKey key);
 
-    private boolean detectSpin(long lastTime, int loops) {
-        long delta = System.nanoTime() - lastTime;
+    /**
+     * Starts moving every key to a fresh selector. Keys are moved in batches
+     * of Defaults.MIGRATION_BATCH per loop iteration, so rebuilding a large
+     * selector never stalls the loop.
+     */
+    private void rebuildSelector() throws IOException {
+        Selector target = Selector.open();
+
+        migration = new Selectors.Migration(selector, target);
+        migrationKeys = selectedKeys;
+        selector = target;
+        selectedKeys = Selectors.installSelectedKeySet(target);
+
+        health.rebuildStarted(System.nanoTime());
+        if (LOG.isWarnEnabled())
+            LOG.warn("{0} spin detected, rebuilding selector [Keys: {1}, {2}]", migration.source(), migration.source().keys().size(), health);
+    }
 
-        if (loops > Defaults.MAX_SPINS && delta < Defaults.MAX_DELTA_NS) {
-            LOG.warning(selector + " spin detected [Loops: " + loops + ", Time diff: " + delta + "]");
-            return true;
+    private void processMigration() throws IOException {
+        // Keys not moved yet are still served by the old selector
+        if (migration.source().selectNow() > 0) {
+            now = System.nanoTime();
+            processSelectedKeys(migration.source(), migrationKeys);
         }
-        return false;
+
+        health.keysMigrated(migration.migrate(Defaults.MIGRATION_BATCH));
+        if (migration.done()) {
+            finishMigration();
+        }
+    }
+
+    private void finishMigration() {
+        health.keysMigrated(migration.finish());
+        health.rebuildFinished(System.nanoTime());
+        migration = null;
+        migrationKeys = null;
+
+        if (LOG.isInfoEnabled())
+            LOG.info("Selector rebuilt: {0}", health);
     }
 
     public void shutdown() {
@@ -212,12 +490,31 @@ public abstract class SimpleChannelDispatcher<T extends Dispatchable> implements
 
     private void cleanup() {
         synchronized (this) {
+            // Tasks accepted before the shutdown still run, the scheduled
+            // ones not yet due are cancelled
+            long now = System.nanoTime();
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                runOrCancel(task, now);
+            }
+            for (ScheduledTask pending : scheduled) {
+                runOrCancel(pending, now);
+            }
+            scheduled.clear();
             closeChannels(open_channels);
             closeChannels(closed_channels);
             closeSelector();
         }
     }
 
+    private void runOrCancel(Runnable task, long now) {
+        if (task instanceof ScheduledTask && !((ScheduledTask) task).isDue(now)) {
+            ((ScheduledTask) task).cancel();
+        } else {
+            runTask(task);
+        }
+    }
+
     private void closeChannels(Queue<T> channels) {
         for (T channel : channels) {
             closeChannel(channel);
@@ -235,7 +532,8 @@ public abstract class SimpleChannelDispatcher<T extends Dispatchable> implements
             try {
                 channel.close();
             } catch (IOException e) {
-                LOG.warning("closeChannel(): " + e.getMessage());
+                if (LOG.isWarnEnabled())
+                    LOG.warn("closeChannel(): {0}", e.getMessage());
             }
         }
     }
@@ -244,12 +542,16 @@ public abstract class SimpleChannelDispatcher<T extends Dispatchable> implements
         try {
             channel.onConnectionClosed();
         } catch (Exception e) {
-            LOG.warning("onConnectionClosed(): " + e.getMessage());
+            if (LOG.isWarnEnabled())
+                LOG.warn("onConnectionClosed(): {0}", e.getMessage());
         }
     }
 
     private void closeSelector() {
         try {
+            if (migration != null) {
+                finishMigration();
+            }
             for (SelectionKey key : selector.keys()) {
                 key.channel().close();
                 key.cancel();
@@ -257,7 +559,8 @@ public abstract class SimpleChannelDispatcher<T extends Dispatchable> implements
             }
             this.selector.close();
         } catch (Exception e) {
-            LOG.warning(e.getMessage());
+            if (LOG.isWarnEnabled())
+                LOG.warn("closeSelector(): {0}", e.getMessage());
         }
     }
 
@@ -266,19 +569,31 @@ public abstract class SimpleChannelDispatcher<T extends Dispatchable> implements
         if ((key = channel.getSelectableChannel().keyFor(selector)) != null) {
             return key;
         }
-        return channel.getSelectableChannel().register(selector, 0, channel);
+        if (migration != null && (key = migration.migrate(channel.getSelectableChannel())) != null) {
+            health.keysMigrated(1);
+            return key;
+        }
+        key = channel.getSelectableChannel().register(selector, 0, channel);
+        onKeyCreated(channel, key);
+        return key;
+    }
+
+    protected void onKeyCreated(T channel, SelectionKey key) {
+        // This overridable method allows subclasses to start tracking
+        // a channel the first time it is registered with the selector.
     }
 
     private Selector newSelector() throws IOException {
-        return (selector == null) ? Selector.open() : Selectors.replaceSelector(selector);
+        Selector sel = Selector.open();
+        selectedKeys = Selectors.installSelectedKeySet(sel);
+        return sel;
     }
 
     public static class Defaults {
         public static int MIN_SPINS = 20;
-        public static int MAX_SPINS = 512;
-        public static long MAX_DELTA_NS = 53416;// 104858;//262144;//524288;
+        public static int MIGRATION_BATCH = 1024;
+        public static int MAX_TASKS = 1024;
         public static long DEFAULT_TIMEOUT = 500; // in millis
-        public static long[] TIMEOUTS = {30, 50, 100, 250, 500};// ,1000, 2000, 4000, 10000, 150000};
         private static final Dispatchable[] DISPATCHABLE_ARRAY = new Dispatchable[0];
     }
 }
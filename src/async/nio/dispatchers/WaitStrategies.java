@@ -0,0 +1,126 @@
+package async.nio.dispatchers;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How a dispatcher waits for readiness between loop iterations.
+ * <p/>
+ * Strategies trade CPU for wake-up latency: BLOCKING parks the dispatcher
+ * in select(), the others keep polling with selectNow() and therefore
+ * dedicate (part of) a core to the dispatcher. Strategies are stateless and
+ * can be shared by several dispatchers.
+ * <p/>
+ * Zero-key returns only count towards selector spin detection when they
+ * come from a blocking select, so polling strategies never trip it.
+ */
+public class WaitStrategies {
+
+    /**
+     * Selector operations exposed by the dispatcher to its wait strategy.
+     */
+    public interface Selection {
+
+        // Non-blocking poll
+        int selectNow() throws IOException;
+
+        // Blocks until readiness, wakeup() or the dispatcher's select timeout
+        int select() throws IOException;
+    }
+
+    public interface WaitStrategy {
+
+        /**
+         * Waits for readiness and returns the number of keys selected (0
+         * means the loop goes around again).
+         */
+        int waitFor(Selection selection) throws IOException;
+    }
+
+    public static final WaitStrategy BLOCKING = new WaitStrategy() {
+        @Override
+        public int waitFor(Selection selection) throws IOException {
+            return selection.select();
+        }
+
+        @Override
+        public String toString() {
+            return "Blocking";
+        }
+    };
+
+    /**
+     * Polls without ever blocking, burning a full core for the lowest
+     * wake-up latency.
+     */
+    public static final WaitStrategy BUSY_POLL = new WaitStrategy() {
+        @Override
+        public int waitFor(Selection selection) throws IOException {
+            return selection.selectNow();
+        }
+
+        @Override
+        public String toString() {
+            return "BusyPoll";
+        }
+    };
+
+    /**
+     * Polls, yielding the CPU to other runnable threads after every empty
+     * poll.
+     */
+    public static final WaitStrategy YIELD_SPIN = new WaitStrategy() {
+        @Override
+        public int waitFor(Selection selection) throws IOException {
+            int n = selection.selectNow();
+            if (n == 0) {
+                Thread.yield();
+            }
+            return n;
+        }
+
+        @Override
+        public String toString() {
+            return "YieldSpin";
+        }
+    };
+
+    /**
+     * Polls for up to the given time, then falls back to a blocking select.
+     */
+    public static WaitStrategy spinThenBlock(long spin, TimeUnit unit) {
+        return new SpinThenBlock(unit.toNanos(spin));
+    }
+
+    private static class SpinThenBlock implements WaitStrategy {
+
+        private final long spinNanos;
+
+        SpinThenBlock(long spinNanos) {
+            if (spinNanos < 0)
+                throw new IllegalArgumentException("Invalid spin time: " + spinNanos);
+            this.spinNanos = spinNanos;
+        }
+
+        @Override
+        public int waitFor(Selection selection) throws IOException {
+            long deadline = System.nanoTime() + spinNanos;
+            do {
+                int n = selection.selectNow();
+                if (n > 0) {
+                    return n;
+                }
+            } while (System.nanoTime() - deadline < 0);
+
+            return selection.select();
+        }
+
+        @Override
+        public String toString() {
+            return "SpinThenBlock[" + spinNanos + "ns]";
+        }
+    }
+
+    private WaitStrategies() {
+    }   // Singleton
+}
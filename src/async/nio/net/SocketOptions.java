@@ -1,8 +1,10 @@
 package async.nio.net;
 
 import java.io.IOException;
+import java.net.DatagramSocket;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.DatagramChannel;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 
@@ -109,6 +111,44 @@ public class SocketOptions {
         }
     }
 
+    public static <T> void setDatagramOption(DatagramChannel channel, SocketOption<T> name, T value) throws IOException {
+        setDatagramOption(channel.socket(), name, value);
+    }
+
+    public static <T> void setDatagramOption(DatagramSocket socket, SocketOption<T> name, T value) throws IOException {
+        if (socket == null)
+            throw new IOException("Invalid Socket: null");
+
+        switch (OptionsMap.get(name)) {
+            case SO_SNDBUF:
+                socket.setSendBufferSize((Integer) value);
+                return;
+
+            case SO_RCVBUF:
+                socket.setReceiveBufferSize((Integer) value);
+                return;
+
+            case SO_REUSEADDR:
+                socket.setReuseAddress((Boolean) value);
+                return;
+
+            case SO_BROADCAST:
+                socket.setBroadcast((Boolean) value);
+                return;
+
+            case IP_TOS:
+                socket.setTrafficClass((Integer) value);
+                return;
+
+            case SO_TIMEOUT:
+                socket.setSoTimeout((Integer) value);
+                return;
+
+            default:
+                throw new IOException("Unknown SocketOption: " + name);
+        }
+    }
+
     public synchronized static <T> T getOption(SocketChannel channel, SocketOption<T> name) throws IOException {
         return getOption(channel.socket(), name);
     }
@@ -169,6 +209,39 @@ public class SocketOptions {
         }
     }
 
+    public static <T> T getDatagramOption(DatagramChannel channel, SocketOption<T> name) throws IOException {
+        return getDatagramOption(channel.socket(), name);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> T getDatagramOption(DatagramSocket socket, SocketOption<T> name) throws IOException {
+        if (socket == null)
+            throw new IOException("Invalid Socket: null");
+
+        switch (OptionsMap.get(name)) {
+            case SO_SNDBUF:
+                return (T) Integer.valueOf(socket.getSendBufferSize());
+
+            case SO_RCVBUF:
+                return (T) Integer.valueOf(socket.getReceiveBufferSize());
+
+            case SO_REUSEADDR:
+                return (T) Boolean.valueOf(socket.getReuseAddress());
+
+            case SO_BROADCAST:
+                return (T) Boolean.valueOf(socket.getBroadcast());
+
+            case IP_TOS:
+                return (T) Integer.valueOf(socket.getTrafficClass());
+
+            case SO_TIMEOUT:
+                return (T) Integer.valueOf(socket.getSoTimeout());
+
+            default:
+                throw new IOException("Invalid Option: " + name);
+        }
+    }
+
     private SocketOptions() {
     } // Singleton
 }
@@ -1,20 +1,67 @@
 package async.nio.util;
 
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.zip.Checksum;
 
 public class Checksums {
 
     /**
-     * A pure-java implementation of the CRC32 checksum that uses the
-     * CRC32-C polynomial, the same polynomial used by iSCSI and implemented
-     * on many Intel chipsets supporting SSE4.2.
+     * A CRC32 checksum that uses the CRC32-C polynomial, the same polynomial
+     * used by iSCSI and implemented on many Intel chipsets supporting SSE4.2.
+     * <p/>
+     * On JDK9+ every update is delegated to java.util.zip.CRC32C, which the
+     * JIT intrinsifies to the hardware instructions; elsewhere (or when the
+     * <code>async.nio.util.Checksums.PURE_JAVA_CRC32C</code> system property
+     * is set) the pure-java slicing-by-8 tables below are used.
      * <p/>
      * This code was taken from Apache Hadoop
      */
     public static class Crc32C implements Checksum {
 
+        public static final String PURE_JAVA_PROPERTY = "async.nio.util.Checksums.PURE_JAVA_CRC32C";
+
         private static final int MASK_DELTA = 0xa282ead8;
 
+        // java.util.zip.CRC32C bindings, resolved once (null when unavailable)
+        private static final MethodHandle NEW_CRC32C;
+        private static final MethodHandle UPDATE_BUFFER;
+
+        static {
+            MethodHandle constructor = null, update = null;
+            if (!Boolean.getBoolean(PURE_JAVA_PROPERTY)) {
+                try {
+                    Class<?> clazz = Class.forName("java.util.zip.CRC32C");
+                    MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                    constructor = lookup.findConstructor(clazz, MethodType.methodType(void.class))
+                            .asType(MethodType.methodType(Checksum.class));
+                    update = lookup.findVirtual(clazz, "update", MethodType.methodType(void.class, ByteBuffer.class))
+                            .asType(MethodType.methodType(void.class, Checksum.class, ByteBuffer.class));
+                } catch (Exception e) {
+                    // Pre-JDK9 runtime, fall back to the tables
+                    constructor = null;
+                    update = null;
+                }
+            }
+            NEW_CRC32C = constructor;
+            UPDATE_BUFFER = update;
+        }
+
+        /**
+         * Returns true if checksums are computed by java.util.zip.CRC32C.
+         */
+        public static boolean isAccelerated() {
+            return NEW_CRC32C != null;
+        }
+
         public static int maskedCrc32c(byte[] data) {
             return maskedCrc32c(data, 0, data.length);
         }
@@ -52,9 +99,15 @@ public class Checksums {
         private int crc;
 
         /**
-         * Create a new PureJavaCrc32 object.
+         * the hardware-backed checksum, or null when using the tables
+         */
+        private final Checksum delegate;
+
+        /**
+         * Create a new Crc32C object.
          */
         public Crc32C() {
+            this.delegate = newDelegate();
             reset();
         }
 
@@ -63,22 +116,33 @@ public class Checksums {
         }
 
         public int getIntValue() {
-            return ~crc;
+            return (delegate != null) ? (int) delegate.getValue() : ~crc;
         }
 
         @Override
         public long getValue() {
+            if (delegate != null) {
+                return delegate.getValue();
+            }
             long ret = crc;
             return (~ret) & 0xffffffffL;
         }
 
         @Override
         public final void reset() {
+            if (delegate != null) {
+                delegate.reset();
+            }
             crc = 0xffffffff;
         }
 
         @Override
         public void update(byte[] b, int off, int len) {
+            if (delegate != null) {
+                delegate.update(b, off, len);
+                return;
+            }
+
             int localCrc = crc;
             while (len > 7) {
                 int c0 = b[off++] ^ localCrc;
@@ -103,9 +167,213 @@ public class Checksums {
 
         @Override
         public void update(int b) {
+            if (delegate != null) {
+                delegate.update(b);
+                return;
+            }
             crc = (crc >>> 8) ^ T8_0[(crc ^ b) & 0xff];
         }
 
+        /**
+         * Updates the checksum with the remaining bytes of the buffer, which
+         * may be direct: its contents are read in place, never copied. Upon
+         * return the buffer's position is equal to its limit.
+         */
+        public void update(ByteBuffer buffer) {
+            if (delegate != null) {
+                try {
+                    UPDATE_BUFFER.invokeExact(delegate, buffer);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+                return;
+            }
+
+            int pos = buffer.position(), limit = buffer.limit();
+            if (buffer.hasArray()) {
+                update(buffer.array(), buffer.arrayOffset() + pos, limit - pos);
+            } else {
+                crc = update(crc, buffer, pos, limit);
+            }
+            buffer.position(limit);
+        }
+
+        /**
+         * Updates the checksum with <code>length</code> bytes of the buffer
+         * starting at absolute index <code>offset</code> (up to its limit),
+         * leaving its position and limit untouched.
+         */
+        public void update(ByteBuffer buffer, int offset, int length) {
+            if (offset < 0 || length < 0 || offset > buffer.limit() - length)
+                throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length);
+
+            if (delegate == null && buffer.hasArray()) {
+                update(buffer.array(), buffer.arrayOffset() + offset, length);
+                return;
+            }
+            ByteBuffer region = buffer.duplicate();
+            region.limit(offset + length);
+            region.position(offset);
+            update(region);
+        }
+
+        /**
+         * Slicing-by-8 over a direct buffer, eight bytes per (little-endian)
+         * absolute getLong.
+         */
+        private static int update(int localCrc, ByteBuffer buffer, int pos, int limit) {
+            ByteBuffer le = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            while (limit - pos > 7) {
+                long l = le.getLong(pos);
+                int lo = (int) l ^ localCrc;
+                int hi = (int) (l >>> 32);
+                localCrc = (T8_7[lo & 0xff] ^ T8_6[(lo >>> 8) & 0xff]) ^ (T8_5[(lo >>> 16) & 0xff] ^ T8_4[lo >>> 24]);
+                localCrc ^= (T8_3[hi & 0xff] ^ T8_2[(hi >>> 8) & 0xff]) ^ (T8_1[(hi >>> 16) & 0xff] ^ T8_0[hi >>> 24]);
+                pos += 8;
+            }
+            while (pos < limit) {
+                localCrc = (localCrc >>> 8) ^ T8_0[(localCrc ^ le.get(pos++)) & 0xff];
+            }
+            return localCrc;
+        }
+
+        /**
+         * Returns the CRC of the concatenation of two byte sequences given the
+         * CRC of each one and the length of the second, by shifting crcA over
+         * lenB zero bytes (GF(2) matrix exponentiation, as in zlib) and folding
+         * in crcB. Runs in O(log lenB).
+         */
+        public static int combine(int crcA, int crcB, long lenB) {
+            if (lenB <= 0) {
+                return crcA;
+            }
+
+            int[] even = new int[32];   // even-power-of-two zeros operator
+            int[] odd = new int[32];    // odd-power-of-two zeros operator
+
+            // Operator for one zero bit
+            odd[0] = POLY;
+            int row = 1;
+            for (int n = 1; n < 32; n++) {
+                odd[n] = row;
+                row <<= 1;
+            }
+            gf2MatrixSquare(even, odd);  // <= 2 zero bits
+            gf2MatrixSquare(odd, even);  // <= 4 zero bits
+
+            // Apply lenB zeros to crcA (first square puts the operator for one zero byte in even)
+            do {
+                gf2MatrixSquare(even, odd);
+                if ((lenB & 1) != 0) {
+                    crcA = gf2MatrixTimes(even, crcA);
+                }
+                lenB >>>= 1;
+                if (lenB == 0) {
+                    break;
+                }
+                gf2MatrixSquare(odd, even);
+                if ((lenB & 1) != 0) {
+                    crcA = gf2MatrixTimes(odd, crcA);
+                }
+                lenB >>>= 1;
+            } while (lenB != 0);
+
+            return crcA ^ crcB;
+        }
+
+        /**
+         * Checksums the remaining bytes of the buffer, leaving its position
+         * untouched. Buffers above PARALLEL_THRESHOLD bytes are split across
+         * the given pool and the partial CRCs combined.
+         */
+        public static int parallel(ByteBuffer buffer, ForkJoinPool pool) {
+            Crc32CTask task = new Crc32CTask(buffer, buffer.position(), buffer.remaining());
+            if (buffer.remaining() <= PARALLEL_THRESHOLD) {
+                return task.compute();
+            }
+            return pool.invoke(task);
+        }
+
+        /**
+         * Checksums <code>size</code> bytes of the file starting at
+         * <code>position</code> by mapping it region by region and
+         * checksumming each region in parallel.
+         */
+        public static int parallel(FileChannel channel, long position, long size, ForkJoinPool pool) throws IOException {
+            int crc = 0;
+            for (long done = 0; done < size; ) {
+                long length = Math.min(size - done, MAX_MAPPED_REGION);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position + done, length);
+                crc = combine(crc, parallel(region, pool), length);
+                done += length;
+            }
+            return crc;
+        }
+
+        public static final int PARALLEL_THRESHOLD = 1 << 20;
+
+        private static final int POLY = 0x82F63B78;
+        private static final long MAX_MAPPED_REGION = 1L << 30;
+
+        private static int gf2MatrixTimes(int[] mat, int vec) {
+            int sum = 0;
+            for (int i = 0; vec != 0; i++, vec >>>= 1) {
+                if ((vec & 1) != 0) {
+                    sum ^= mat[i];
+                }
+            }
+            return sum;
+        }
+
+        private static void gf2MatrixSquare(int[] square, int[] mat) {
+            for (int n = 0; n < 32; n++) {
+                square[n] = gf2MatrixTimes(mat, mat[n]);
+            }
+        }
+
+        @SuppressWarnings("serial")
+        private static class Crc32CTask extends RecursiveTask<Integer> {
+
+            private final ByteBuffer buffer;
+            private final int offset;
+            private final int length;
+
+            Crc32CTask(ByteBuffer buffer, int offset, int length) {
+                this.buffer = buffer;
+                this.offset = offset;
+                this.length = length;
+            }
+
+            @Override
+            protected Integer compute() {
+                if (length <= PARALLEL_THRESHOLD) {
+                    Crc32C crc32c = new Crc32C();
+                    crc32c.update(buffer, offset, length);
+                    return crc32c.getIntValue();
+                }
+
+                int half = length >>> 1;
+                Crc32CTask left = new Crc32CTask(buffer, offset, half);
+                Crc32CTask right = new Crc32CTask(buffer, offset + half, length - half);
+                left.fork();
+                int crcB = right.compute();
+                return combine(left.join(), crcB, length - half);
+            }
+        }
+
+        private static Checksum newDelegate() {
+            if (NEW_CRC32C == null) {
+                return null;
+            }
+            try {
+                return (Checksum) NEW_CRC32C.invokeExact();
+            } catch (Throwable e) {
+                return null;
+            }
+        }
+
         // CRC polynomial tables generated by:
         // java -cp build/test/classes/:build/classes/ \
         // org.apache.hadoop.util.TestPureJavaCrc32\$Table 82F63B78
@@ -4,7 +4,12 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.ConsoleHandler;
+import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 
@@ -42,7 +47,36 @@ public class Logger extends java.util.logging.Logger {
      */
     private enum LogType {
 
-        ASSERT, DEBUG, ERROR, INFO, VERBOSE, WARN, CONFIG, NONE
+        ASSERT, DEBUG, ERROR, INFO, VERBOSE, WARN, CONFIG, NONE;
+
+        static LogType of(Level level) {
+            int value = level.intValue();
+            if (value >= Level.SEVERE.intValue())
+                return ERROR;
+            if (value >= Level.WARNING.intValue())
+                return WARN;
+            if (value >= Level.INFO.intValue())
+                return VERBOSE;
+            if (value >= Level.CONFIG.intValue())
+                return CONFIG;
+            return VERBOSE;
+        }
+    }
+
+    /**
+     * LogRecord carrying its own LogType, so that concurrent callers never
+     * have to share (and lock) formatter state.
+     */
+    private static class LogEvent extends LogRecord {
+
+        private static final long serialVersionUID = 1L;
+
+        final LogType type;
+
+        LogEvent(LogType type, Level level, String msg) {
+            super(level, msg);
+            this.type = type;
+        }
     }
 
     private static class Formatter extends java.util.logging.Formatter {
@@ -56,18 +90,25 @@ public class Logger extends java.util.logging.Logger {
 
         };
 
-        volatile LogType formatAs = LogType.INFO;
-        StringBuilder sb = new StringBuilder(256);
+        ThreadLocal<StringBuilder> sb = new ThreadLocal<StringBuilder>() {
+
+            @Override
+            protected StringBuilder initialValue() {
+                return new StringBuilder(256);
+            }
+
+        };
 
         @Override
-        public synchronized String format(LogRecord record) {
+        public String format(LogRecord record) {
+            StringBuilder sb = this.sb.get();
             String clazz = record.getSourceClassName();
+            LogType type = (record instanceof LogEvent) ? ((LogEvent) record).type : LogType.of(record.getLevel());
             try {
                 sb.append(df.get().format(new Date(record.getMillis())));
-                sb.append(" - [").append(formatAs.name()).append("] ");
+                sb.append(" - [").append(type.name()).append("] ");
                 sb.append(formatMessage(record));
-                sb.append("- { m: ").append(clazz.substring(clazz.lastIndexOf('.') + 1, clazz.length())).append('.')
-                        .append(record.getSourceMethodName());
+                sb.append("- { m: ").append(clazz.substring(clazz.lastIndexOf('.') + 1, clazz.length()));
                 sb.append(", t: ").append(record.getThreadID()).append(" }");
                 sb.append("\n");
                 return sb.toString();
@@ -77,12 +118,151 @@ public class Logger extends java.util.logging.Logger {
         }
     }
 
+    /**
+     * Asynchronous ring-buffer appender.
+     * <p/>
+     * Callers claim a slot with a single CAS and never block: when the ring
+     * is full the record is dropped and counted. A single daemon thread
+     * drains the ring and hands records to the (synchronized) delegate
+     * handler, keeping formatting and console I/O off the dispatcher threads.
+     * It parks while the ring is empty and is unparked by the producer that
+     * publishes the next record.
+     */
+    public static class Appender extends Handler implements Runnable {
+
+        private static final int DEFAULT_CAPACITY = 8192;
+        private static final long FLUSH_PARK_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+        private static volatile Appender console;
+
+        public static Appender console() {
+            if (console == null) {
+                synchronized (Appender.class) {
+                    if (console == null) {
+                        ConsoleHandler handler = new ConsoleHandler();
+                        handler.setFormatter(new Formatter());
+                        console = new Appender(handler, DEFAULT_CAPACITY);
+                    }
+                }
+            }
+            return console;
+        }
+
+        private final Handler delegate;
+        private final AtomicReferenceArray<LogRecord> ring;
+        private final int mask;
+
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong tail = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+
+        private final Thread drainer;
+        private volatile boolean parked;
+
+        public Appender(Handler delegate, int capacity) {
+            if (Integer.bitCount(capacity) != 1)
+                throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+
+            this.delegate = delegate;
+            this.ring = new AtomicReferenceArray<LogRecord>(capacity);
+            this.mask = capacity - 1;
+
+            this.drainer = new Thread(this, "AsyncLogAppender@" + getHashCode(this));
+            this.drainer.setDaemon(true);
+            this.drainer.start();
+
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                public void run() {
+                    Appender.this.flush();
+                }
+            });
+        }
+
+        @Override
+        public void publish(LogRecord record) {
+            for (; ; ) {
+                long seq = tail.get();
+                if (seq - head.get() > mask) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                if (tail.compareAndSet(seq, seq + 1)) {
+                    // Volatile store, so that the drainer cannot park unseen
+                    ring.set((int) seq & mask, record);
+                    if (parked) {
+                        LockSupport.unpark(drainer);
+                    }
+                    return;
+                }
+            }
+        }
+
+        public long dropped() {
+            return dropped.get();
+        }
+
+        @Override
+        public void run() {
+            for (; ; ) {
+                if (drain()) {
+                    continue;
+                }
+                parked = true;
+                if (ring.get((int) head.get() & mask) == null) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+            }
+        }
+
+        private boolean drain() {
+            long seq = head.get();
+            boolean drained = false;
+            for (; ; ) {
+                int idx = (int) seq & mask;
+                LogRecord record = ring.get(idx);
+                if (record == null) {
+                    // Either empty or a producer has claimed but not yet published this slot
+                    break;
+                }
+                ring.lazySet(idx, null);
+                head.lazySet(++seq);
+                try {
+                    delegate.publish(record);
+                } catch (RuntimeException e) {
+                    reportError(null, e, 0);
+                }
+                drained = true;
+            }
+            if (drained) {
+                delegate.flush();
+            }
+            return drained;
+        }
+
+        /**
+         * Waits (bounded) for the drain thread to catch up with published records.
+         */
+        @Override
+        public void flush() {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+            while (head.get() < tail.get() && System.nanoTime() < deadline) {
+                LockSupport.parkNanos(FLUSH_PARK_NS);
+            }
+            delegate.flush();
+        }
+
+        @Override
+        public void close() {
+            flush();
+        }
+    }
+
     private static final String EMPTY_STR = "";
 
     /**
      * Instance members & methods
      */
-    Formatter logFormatter;
     String netDebug;
 
     volatile boolean debug;
@@ -117,59 +297,86 @@ public class Logger extends java.util.logging.Logger {
 
     public void setFormatHandler() {
         setUseParentHandlers(false);
-        addHandler(new ConsoleHandler());
-        getHandlers()[0].setFormatter(logFormatter = new Formatter());
+        addHandler(Appender.console());
+    }
+
+    /**
+     * Level guards. Call sites on the dispatcher path should check these
+     * before building messages or varargs arrays.
+     */
+    public boolean isDebugEnabled() {
+        return debug || isLoggable(Level.FINE);
     }
 
-    public synchronized void config(String msg, Object... args) {
-        logFormatter.formatAs = LogType.CONFIG;
-        log(Level.CONFIG, msg, args);
+    public boolean isInfoEnabled() {
+        return isLoggable(Level.INFO);
     }
 
-    public synchronized void trace(String msg, Object... args) {
-        logFormatter.formatAs = LogType.VERBOSE;
-        log(Level.FINEST, msg, args);
+    public boolean isWarnEnabled() {
+        return isLoggable(Level.WARNING);
     }
 
-    public synchronized void detail(String msg, Object... args) {
-        logFormatter.formatAs = LogType.VERBOSE;
-        log(Level.FINE, msg, args);
+    public void config(String msg, Object... args) {
+        log(LogType.CONFIG, Level.CONFIG, msg, args);
     }
 
-    public synchronized void info(String msg, Object... args) {
-        logFormatter.formatAs = LogType.VERBOSE;
-        log(Level.INFO, msg, args);
+    public void trace(String msg, Object... args) {
+        log(LogType.VERBOSE, Level.FINEST, msg, args);
     }
 
-    public synchronized void warn(String msg, Object... args) {
-        logFormatter.formatAs = LogType.WARN;
-        log(Level.WARNING, msg, args);
+    public void detail(String msg, Object... args) {
+        log(LogType.VERBOSE, Level.FINE, msg, args);
     }
 
-    public synchronized void severe(String msg, Object... args) {
-        logFormatter.formatAs = LogType.ERROR;
-        log(Level.SEVERE, msg, args);
+    public void info(String msg, Object... args) {
+        log(LogType.VERBOSE, Level.INFO, msg, args);
     }
 
-    public synchronized void error(String msg, Object... args) {
-        logFormatter.formatAs = LogType.ERROR;
-        log(Level.SEVERE, msg, args);
+    public void warn(String msg, Object... args) {
+        log(LogType.WARN, Level.WARNING, msg, args);
     }
 
-    public synchronized void error(String msg) {
-        logFormatter.formatAs = LogType.ERROR;
-        log(Level.SEVERE, msg);
+    public void severe(String msg, Object... args) {
+        log(LogType.ERROR, Level.SEVERE, msg, args);
     }
 
-    public synchronized void debug(String msg, Object... args) {
-        logFormatter.formatAs = LogType.DEBUG;
-        log(Level.INFO, msg, args);
+    public void error(String msg, Object... args) {
+        log(LogType.ERROR, Level.SEVERE, msg, args);
     }
 
-    public synchronized void debug(String msg) {
+    public void error(String msg) {
+        log(LogType.ERROR, Level.SEVERE, msg, null);
+    }
+
+    public void debug(String msg, Object... args) {
+        if (!isDebugEnabled())
+            return;
+        log(LogType.DEBUG, Level.INFO, msg, args);
+    }
+
+    public void debug(String msg) {
+        if (!isDebugEnabled())
+            return;
+        log(LogType.DEBUG, Level.INFO, msg, null);
+    }
+
+    private void log(LogType type, Level level, String msg, Object[] args) {
+        if (!isLoggable(level))
+            return;
+
+        LogEvent record = new LogEvent(type, level, msg);
+        record.setParameters(args);
+        log(record);
+    }
 
-        logFormatter.formatAs = LogType.DEBUG;
-        log(Level.INFO, msg);
+    @Override
+    public void log(LogRecord record) {
+        // Caller inference walks the stack of whichever thread asks first, which
+        // would be the appender thread. Pin the source eagerly instead.
+        record.setLoggerName(getName());
+        record.setSourceClassName(getName());
+        record.setSourceMethodName(null);
+        super.log(record);
     }
 
     public static void main(String[] args) {
@@ -178,5 +385,6 @@ public class Logger extends java.util.logging.Logger {
         logger.debug("debug message.");
         logger.warning("A warning message.");
         logger.severe("A severe message.");
+        Appender.console().flush();
     }
 }
@@ -4,15 +4,15 @@ import async.nio.net.SocketOption;
 import async.nio.net.StandardSocketOptions;
 
 import java.io.IOException;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.net.*;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
 import java.nio.channels.spi.SelectorProvider;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Net {
 
@@ -70,7 +70,7 @@ public class Net {
         public static String getLocalHostAddress() throws UnknownHostException {
             try {
                 String hostAddress = getLocalHostLANAddress().getHostAddress();
-                LOG.debug("hostAddress = [" + hostAddress + "]");
+                LOG.debug("hostAddress = [{0}]", hostAddress);
 
                 return hostAddress;
             } catch (UnknownHostException e1) {
@@ -281,283 +281,160 @@ public class Net {
             public static final int MINIMUM_DELAY = 0x10;
         }
 
-        private static final ThreadLocal<DatagramChannels> threadLocal = new ThreadLocal<DatagramChannels>() {
-
-            @Override
-            public DatagramChannels initialValue() {
-                return new DatagramChannels();
-            }
-        };
+        /**
+         * Maps our socket options to the JDK7+ java.net.StandardSocketOptions.
+         * <p/>
+         * Options are resolved once at class initialization, so every get/set is
+         * a plain DatagramChannel.getOption/setOption call with no reflection
+         * on the hot path (e.g. per-packet TTL or TOS tweaks). IP_MULTICAST_IF
+         * (InetAddress) and SO_TIMEOUT have no channel-level equivalent and are
+         * bridged through NetworkInterface and the channel's socket adaptor.
+         */
+        private static final Map<SocketOption<?>, java.net.SocketOption<?>> options = new IdentityHashMap<SocketOption<?>, java.net.SocketOption<?>>();
 
-        private static DatagramChannels threadSafe() {
-            return threadLocal.get();
+        static {
+            options.put(StandardSocketOptions.SO_SNDBUF, java.net.StandardSocketOptions.SO_SNDBUF);
+            options.put(StandardSocketOptions.SO_RCVBUF, java.net.StandardSocketOptions.SO_RCVBUF);
+            options.put(StandardSocketOptions.SO_REUSEADDR, java.net.StandardSocketOptions.SO_REUSEADDR);
+            options.put(StandardSocketOptions.SO_BROADCAST, java.net.StandardSocketOptions.SO_BROADCAST);
+            options.put(StandardSocketOptions.IP_TOS, java.net.StandardSocketOptions.IP_TOS);
+            options.put(StandardSocketOptions.IP_MULTICAST_IF2, java.net.StandardSocketOptions.IP_MULTICAST_IF);
+            options.put(StandardSocketOptions.IP_MULTICAST_LOOP, java.net.StandardSocketOptions.IP_MULTICAST_LOOP);
         }
 
-        public static void joinGroup(DatagramChannel channel, InetAddress group, NetworkInterface netIf) throws IOException {
-            invokeIO(MulticastMethod.join.name(), channel, group, netIf);
+        /**
+         * Joins the group on the given interface. Joining a group the channel is
+         * already a member of returns the existing membership.
+         *
+         * @return the membership, to be handed to leaveGroup()
+         */
+        public static MembershipKey joinGroup(DatagramChannel channel, InetAddress group, NetworkInterface netIf) throws IOException {
+            return channel.join(group, netIf);
         }
 
-        public static void leaveGroup(DatagramChannel channel, InetAddress group, NetworkInterface netIf) throws IOException {
-            invokeIO(MulticastMethod.leave.name(), channel, group, netIf);
+        /**
+         * Leaves the group joined by joinGroup().
+         */
+        public static void leaveGroup(MembershipKey membership) {
+            membership.drop();
         }
 
         public static Integer getTimeToLive(DatagramChannel channel) throws Exception {
-            return invokeIO(MulticastMethod.getTimeToLive.name(), channel);
+            return channel.getOption(java.net.StandardSocketOptions.IP_MULTICAST_TTL);
         }
 
         public static void setTimeToLive(DatagramChannel channel, Integer ttl) throws IOException {
-            invokeIO(MulticastMethod.setTimeToLive.name(), channel, ttl);
+            channel.setOption(java.net.StandardSocketOptions.IP_MULTICAST_TTL, ttl);
         }
 
         public static Integer getSoTimeout(DatagramChannel channel) throws Exception {
-            return invokeSocket(MulticastMethod.getOption.name(), channel, StandardSocketOptions.SO_TIMEOUT);
+            return getOption(channel, StandardSocketOptions.SO_TIMEOUT);
         }
 
         public static void setSoTimeout(DatagramChannel channel, Integer timeout) throws IOException {
-            invokeSocket(MulticastMethod.setOption.name(), channel, StandardSocketOptions.SO_TIMEOUT, timeout);
+            setOption(channel, StandardSocketOptions.SO_TIMEOUT, timeout);
         }
 
         public static NetworkInterface getNetworkInterface(DatagramChannel channel) throws SocketException {
-            return invokeSocket(MulticastMethod.getOption.name(), channel, StandardSocketOptions.IP_MULTICAST_IF2);
+            return getOption(channel, StandardSocketOptions.IP_MULTICAST_IF2);
         }
 
         public static void setNetworkInterface(DatagramChannel channel, NetworkInterface netIf) throws SocketException {
-            invokeSocket(MulticastMethod.setOption.name(), channel, StandardSocketOptions.IP_MULTICAST_IF2, netIf);
+            setOption(channel, StandardSocketOptions.IP_MULTICAST_IF2, netIf);
         }
 
         public static InetAddress getInterface(DatagramChannel channel) throws SocketException {
-            return invokeSocket(MulticastMethod.getOption.name(), channel, StandardSocketOptions.IP_MULTICAST_IF);
+            return getOption(channel, StandardSocketOptions.IP_MULTICAST_IF);
         }
 
         public static void setInterface(DatagramChannel channel, InetAddress netIf) throws SocketException {
-            invokeSocket(MulticastMethod.setOption.name(), channel, StandardSocketOptions.IP_MULTICAST_IF, netIf);
+            setOption(channel, StandardSocketOptions.IP_MULTICAST_IF, netIf);
         }
 
         public static Boolean getBroadcast(DatagramChannel channel) throws SocketException {
-            return invokeSocket(MulticastMethod.getOption.name(), channel, StandardSocketOptions.SO_BROADCAST);
+            return getOption(channel, StandardSocketOptions.SO_BROADCAST);
         }
 
         public static void setBroadcast(DatagramChannel channel, Boolean mode) throws SocketException {
-            invokeSocket(MulticastMethod.setOption.name(), channel, StandardSocketOptions.SO_BROADCAST, mode);
+            setOption(channel, StandardSocketOptions.SO_BROADCAST, mode);
         }
 
+        /**
+         * Returns true if multicast datagrams are looped back to the local host.
+         */
         public static Boolean getLoopbackMode(DatagramChannel channel) throws SocketException {
-            return invokeSocket(MulticastMethod.getOption.name(), channel, StandardSocketOptions.IP_MULTICAST_LOOP);
+            return getOption(channel, StandardSocketOptions.IP_MULTICAST_LOOP);
         }
 
         public static void setLoopbackMode(DatagramChannel channel, Boolean mode) throws SocketException {
-            invokeSocket(MulticastMethod.setOption.name(), channel, StandardSocketOptions.IP_MULTICAST_LOOP, mode);
+            setOption(channel, StandardSocketOptions.IP_MULTICAST_LOOP, mode);
         }
 
         public static Integer getTrafficClass(DatagramChannel channel) throws SocketException {
-            return invokeSocket(MulticastMethod.getOption.name(), channel, StandardSocketOptions.IP_TOS);
+            return getOption(channel, StandardSocketOptions.IP_TOS);
         }
 
         public static void setTrafficClass(DatagramChannel channel, Integer value) throws SocketException {
-            invokeSocket(MulticastMethod.setOption.name(), channel, StandardSocketOptions.IP_TOS, value);
+            setOption(channel, StandardSocketOptions.IP_TOS, value);
         }
 
         public static <T> T getOption(DatagramChannel channel, SocketOption<T> option) throws SocketException {
-            return (T) invokeSocket(MulticastMethod.getOption.name(), channel, ((StandardSocketOptions) option).value());
-        }
-
-        public static <T> void setOption(DatagramChannel channel, SocketOption<T> option, T value) throws SocketException {
-            invokeSocket(MulticastMethod.setOption.name(), channel, option, value);
-        }
-
-        private static <T> T invokeSocket(String method, DatagramChannel channel, Object... args) throws SocketException {
             try {
-                return (T) threadSafe().invoke(method, channel, args);
+                if (option == StandardSocketOptions.SO_TIMEOUT) {
+                    return (T) Integer.valueOf(channel.socket().getSoTimeout());
+                }
+                if (option == StandardSocketOptions.IP_MULTICAST_IF) {
+                    NetworkInterface netIf = channel.getOption(java.net.StandardSocketOptions.IP_MULTICAST_IF);
+                    if (netIf == null) {
+                        return null;
+                    }
+                    Enumeration<InetAddress> addresses = netIf.getInetAddresses();
+                    return addresses.hasMoreElements() ? (T) addresses.nextElement() : null;
+                }
+                return (T) channel.getOption(standardOption(option));
             } catch (SocketException e) {
                 throw e;
-            } catch (Exception e) {
-                e.printStackTrace();
-                throw new SocketException(e.getMessage());
+            } catch (IOException e) {
+                throw socketException(e);
             }
         }
 
-        private static <T> T invokeIO(String method, DatagramChannel channel, Object... args) throws IOException {
+        public static <T> void setOption(DatagramChannel channel, SocketOption<T> option, T value) throws SocketException {
             try {
-                return (T) threadSafe().invoke(method, channel, args);
-            } catch (IOException e) {
+                if (option == StandardSocketOptions.SO_TIMEOUT) {
+                    channel.socket().setSoTimeout((Integer) value);
+                    return;
+                }
+                if (option == StandardSocketOptions.IP_MULTICAST_IF) {
+                    NetworkInterface netIf = NetworkInterface.getByInetAddress((InetAddress) value);
+                    if (netIf == null)
+                        throw new SocketException("No network interface bound to " + value);
+                    channel.setOption(java.net.StandardSocketOptions.IP_MULTICAST_IF, netIf);
+                    return;
+                }
+                channel.setOption(standardOption(option), value);
+            } catch (SocketException e) {
                 throw e;
-            } catch (Exception e) {
-                // e.printStackTrace();
-                throw new IOException(e.getMessage());
+            } catch (IOException e) {
+                throw socketException(e);
             }
         }
 
-        /**
-         * Class variables
-         */
-        public static final String DATAGRAM_SOCKET_IMPL = "_DatagramSocket.impl";
-        public static final String DATAGRAM_CHANNEL_IMPL = "_DatagramChannel.impl";
-        public static final String DATAGRAM_SOCKET_IMPL_FD = "_DatagramSocket.fd";
-        public static final String DATAGRAM_CHANNEL_IMPL_FD = "_DatagramChannel.fd";
-        private Object tempSocket;
-        private Field tempSocketFd;
-        private Field tempChannelFd;
-
-        private enum MulticastMethod {
-
-            join, leave, socketSetOption, setOption, setInterface, setNetworkInterface, setTimeToLive, setSoTimeout, setBroadcast, setLoopbackMode, setTrafficClass, socketGetOption, getOption, getInterface, getNetworkInterface, getTimeToLive, getSoTimeout, getBroadcast, getLoopbackMode, getTrafficClass
+        private static java.net.SocketOption standardOption(SocketOption<?> option) {
+            java.net.SocketOption<?> standard = options.get(option);
+            if (standard == null)
+                throw new UnsupportedOperationException("'" + option.name() + "' not supported");
+            return standard;
         }
 
-        private DatagramChannels() {
-            // java.net.PlainDatagramSocketImpl z;
-            System.setProperty(DATAGRAM_SOCKET_IMPL, "java.net.PlainDatagramSocketImpl");
-            System.setProperty(DATAGRAM_SOCKET_IMPL_FD, "fd");
-            System.setProperty(DATAGRAM_CHANNEL_IMPL, "sun.nio.ch.DatagramChannelImpl");
-            System.setProperty(DATAGRAM_CHANNEL_IMPL_FD, "fd");
+        private static SocketException socketException(IOException e) {
+            SocketException se = new SocketException(e.getMessage());
+            se.initCause(e);
+            return se;
         }
 
-        private <T, A, B> T invoke(String method, DatagramChannel channel, Object... args) throws IOException {
-
-            // http://www.mernst.org/blog/archives/12-01-2006_12-31-2006.html
-            // UGLY UGLY HACK: multicast support for NIO
-            // create a temporary instanceof PlainDatagramSocket, set its fd and configure it
-            if (tempSocket == null) {
-
-                // Enable access to DatagramSocketImpl class
-                Constructor c;
-                try {
-                    // Create temporary DatagramSocket instance
-                    c = Class.forName(System.getProperty(DATAGRAM_SOCKET_IMPL)).getDeclaredConstructor();
-                    c.setAccessible(true);
-                    tempSocket = c.newInstance();
-
-                    // for(Field field :
-                    // tempSocket.getClass().getSuperclass().getSuperclass().getDeclaredFields()){
-                    // Print field info
-                    // System.out.println(field);
-                    // }
-
-                    // Enable access to Socket.fd
-                    // tempSocketFd = Class.forName(System.getProperty(DATAGRAM_SOCKET_IMPL)).getSuperclass().getDeclaredField(System.getProperty(DATAGRAM_SOCKET_IMPL_FD));
-                    Class clz = Class.forName(System.getProperty(DATAGRAM_SOCKET_IMPL));
-                    System.out.println(clz);
-
-                    tempSocketFd = clz.getSuperclass().getSuperclass()
-                            .getDeclaredField(System.getProperty(DATAGRAM_SOCKET_IMPL_FD));
-                    tempSocketFd.setAccessible(true);
-
-                    // Enable access to Channel.fd
-                    tempChannelFd = Class.forName(System.getProperty(DATAGRAM_CHANNEL_IMPL)).getDeclaredField(
-                            System.getProperty(DATAGRAM_CHANNEL_IMPL_FD));
-                    tempChannelFd.setAccessible(true);
-                } catch (RuntimeException e) {
-                    tempSocket = null;
-                    throw e;
-                } catch (Exception e) {
-                    tempSocket = null;
-                    e.printStackTrace();
-                    throw new SocketException(e.getMessage());
-                }
-            }
-
-            try {
-
-                // Bridge temporary file descriptors -
-                // DatagramSocket.fd = DatagramChannel.fd;
-                tempSocketFd.set(tempSocket, tempChannelFd.get(channel));
-
-                // Calling - DatagramSocket.methodX(...);
-                switch (args.length) {
-                    case 0:
-                        // calling channel.getX( ... );
-                        Method m = tempSocket.getClass().getDeclaredMethod(method);
-                        m.setAccessible(true);
-                        synchronized (channel) {
-                            return (T) m.invoke(tempSocket);
-                        }
-                    case 1:
-                        // calling channel.setX( ... ) || channel.getOption( ... );
-                        if (args[0] instanceof Integer) {
-                            // Downcasting to int
-                            // primitive
-                            m = tempSocket.getClass().getSuperclass().getDeclaredMethod(method, Integer.TYPE);
-                            m.setAccessible(true);
-                            synchronized (channel) {
-                                return (T) m.invoke(tempSocket, args);
-                            }
-                        }
-                        // calling channel.setX( ... ) || channel.getOption( ... );
-                        if (args[0] instanceof Boolean) {
-                            // Downcasting to
-                            // boolean primitive
-                            m = tempSocket.getClass().getDeclaredMethod(method, Boolean.TYPE);
-                            m.setAccessible(true);
-                            synchronized (channel) {
-                                return (T) m.invoke(tempSocket, args);
-                            }
-                        }
-                        break;
-                    case 2:
-                        // calling channel.setOption(args[0], args[1]);
-                        if (args[0] instanceof SocketOption) {
-                            m = tempSocket.getClass().getSuperclass()
-                                    .getDeclaredMethod(method, Integer.TYPE, Object.class);
-                            m.setAccessible(true);
-                            synchronized (channel) {
-                                return (T) m.invoke(tempSocket, ((StandardSocketOptions) args[0]).value(),
-                                        args[1]);
-                            }
-                        }
-                        // calling channel.bind(args[0]. args[1])
-                        if (args[1] instanceof InetAddress) {
-                            m = tempSocket.getClass()
-                                    .getDeclaredMethod(method, Integer.TYPE, InetAddress.class);
-                            m.setAccessible(true);
-                            synchronized (channel) {
-                                return (T) m.invoke(tempSocket, args);
-                            }
-                        }
-                        break;
-                }
-
-                Class<?>[] classes = new Class<?>[args.length];
-                for (int i = 0; i < args.length; i++) {
-                    if (args[i] instanceof InetAddress) {
-                        // channel.connect(args[0], args[1]) requires InetAddress vs Inet4Address
-                        classes[i] = InetAddress.class;
-                        continue;
-                    }
-                    classes[i] = args[i].getClass();
-                }
-
-                Method m = tempSocket.getClass().getDeclaredMethod(method, classes);
-                m.setAccessible(true);
-
-                // Make sure we synchronize with the real
-                // DatagramChannel fd before we make the call
-                synchronized (channel) {
-                    return (T) m.invoke(tempSocket, args);
-                }
-            } catch (RuntimeException e) {
-                tempSocket = null;
-                throw e;
-            } catch (Exception e) {
-                tempSocket = null;
-                // Rethrow SocketException
-                if (e.getCause() instanceof SocketException) {
-                    throw (SocketException) e.getCause();
-                }
-                // Rethrow IOException
-                if (e.getCause() instanceof IOException) {
-                    throw (IOException) e.getCause();
-                }
-                // Re-wrap error into an IOException
-                e.printStackTrace();
-                throw new IOException(e.getMessage());
-            } finally {
-                try {
-                    // Nullify real DatagramChannel's fd from temporary socket instance,
-                    // otherwise the fake socket's finalizer will nuke the real channel's fd
-                    tempSocketFd.set(tempSocket, null);
-                } catch (Exception ex) {
-                }
-            }
-        }
+        private DatagramChannels() {
+        }   // Singleton
 
         public static void main(String[] args) throws Exception {
 
@@ -585,10 +462,9 @@ public class Net {
             System.out.println("DatagramSocket.TrafficClass: " + DatagramChannels.getTrafficClass(dc));
 
             // Test DatagramChannel Multicast methods
-            DatagramChannels.joinGroup(dc, InetAddress.getByName("224.224.1.1"), NetworkInterface.getNetworkInterfaces()
-                    .nextElement());
-            DatagramChannels.leaveGroup(dc, InetAddress.getByName("224.224.1.1"), NetworkInterface.getNetworkInterfaces()
-                    .nextElement());
+            MembershipKey membership = DatagramChannels.joinGroup(dc, InetAddress.getByName("224.224.1.1"),
+                    NetworkInterface.getNetworkInterfaces().nextElement());
+            DatagramChannels.leaveGroup(membership);
 
             // Test DatagramChannel.SocketOptions
             DatagramChannels.setOption(dc, StandardSocketOptions.IP_MULTICAST_IF, InetAddress.getLocalHost());
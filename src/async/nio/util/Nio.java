@@ -2,8 +2,11 @@ package async.nio.util;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Nio {
 
@@ -148,81 +151,86 @@ public class Nio {
 
         // ByteBuffer to ByteBuffer transfer.
         public static int transfer(ByteBuffer src, ByteBuffer dst) {
-            int tot = Math.min(src.remaining(), dst.remaining());
-            for (int i = 0; i < tot; i++) {
-                dst.put(src.get());
-            }
-            return tot;
+            return transfer0(src, dst, Integer.MAX_VALUE);
         }
 
-        // ByteBuffer to ByteBuffer limited transfer
+        // ByteBuffer to ByteBuffer limited transfer (src position is left untouched)
         public static int transfer(int amount, ByteBuffer src, int src_offset, ByteBuffer dst) {
             int pos = src.position();
             src.position(pos + src_offset);
-            int tot = Math.min(src.remaining(), amount);
-            tot = Math.min(dst.remaining(), amount);
-            for (int i = 0; i < tot; i++) {
-                dst.put(src.get());
+            try {
+                return transfer0(src, dst, amount);
+            } finally {
+                src.position(pos);
             }
-            src.position(pos);
-            return tot;
         }
 
-        // ByteBuffer to ByteBuffer[] transfer.
+        // ByteBuffer to ByteBuffer[] limited transfer, returns the amount left to copy.
         public static int transfer(int amount, ByteBuffer src, ByteBuffer[] dst, int offset, int length) {
-            // copy amount
             int rem = amount;
-            for (; offset < length; offset++) {
-                rem -= transfer(src, dst[offset]);
-                if (rem <= 0) {
-                    break;
-                }
+            for (int end = offset + length; offset < end && rem > 0 && src.hasRemaining(); offset++) {
+                rem -= transfer0(src, dst[offset], rem);
             }
             return rem;
         }
 
-        // ByteBuffer[] to ByteBuffer transfer.
+        // ByteBuffer[] to ByteBuffer limited transfer, returns the amount left to copy.
         public static int transfer(int amount, ByteBuffer[] src, int offset, int length, ByteBuffer dst) {
-            // copy amount
             int rem = amount;
-            for (; offset < length; offset++) {
-                rem -= transfer(src[offset], dst);
-                if (rem <= 0) {
-                    break;
-                }
+            for (int end = offset + length; offset < end && rem > 0 && dst.hasRemaining(); offset++) {
+                rem -= transfer0(src[offset], dst, rem);
             }
             return rem;
         }
 
         // ByteBuffer to ByteBuffer[] transfer.
         public static int transfer(ByteBuffer src, ByteBuffer[] dst, int offset, int length) {
-            // copy as much as possible
             int tot = 0;
-            for (; offset < length; offset++) {
-                tot += transfer(src, dst[offset]);
-                if (!src.hasRemaining()) {
-                    break;
-                }
+            for (int end = offset + length; offset < end && src.hasRemaining(); offset++) {
+                tot += transfer0(src, dst[offset], Integer.MAX_VALUE);
             }
             return tot;
         }
 
         // ByteBuffer[] to ByteBuffer transfer.
         public static int transfer(ByteBuffer[] src, int offset, int length, ByteBuffer dst) {
-            // copy as much as possible
             int tot = 0;
-            for (; offset < length; offset++) {
-                tot += transfer(src[offset], dst);
-                if (!dst.hasRemaining()) {
-                    break;
-                }
+            for (int end = offset + length; offset < end && dst.hasRemaining(); offset++) {
+                tot += transfer0(src[offset], dst, Integer.MAX_VALUE);
             }
             return tot;
         }
 
-        // ByteBuffer[] to ByteBuffer transfer.
+        // byte[] to ByteBuffer transfer.
         public static int transfer(byte[] src, ByteBuffer dst) {
-            return transfer(ByteBuffer.wrap(src), dst);
+            int tot = Math.min(src.length, dst.remaining());
+            dst.put(src, 0, tot);
+            return tot;
+        }
+
+        /**
+         * Bulk copy of at most <code>max</code> bytes, letting put(ByteBuffer)
+         * pick the fastest path (arraycopy for heap buffers, memory copy when
+         * either side is direct). The source limit is narrowed for the copy
+         * instead of slicing, so no view buffer is allocated.
+         */
+        private static int transfer0(ByteBuffer src, ByteBuffer dst, int max) {
+            int tot = Math.min(Math.min(src.remaining(), dst.remaining()), max);
+            if (tot <= 0) {
+                return 0;
+            }
+            if (tot == src.remaining()) {
+                dst.put(src);
+                return tot;
+            }
+            int limit = src.limit();
+            src.limit(src.position() + tot);
+            try {
+                dst.put(src);
+            } finally {
+                src.limit(limit);
+            }
+            return tot;
         }
 
         public static boolean hasRemaining(final ByteBuffer[] list) {
@@ -240,13 +248,361 @@ public class Nio {
 
         public static int remaining(final ByteBuffer[] list, int offset, int length) {
             int i = 0;
-            for (int b = offset; b < length; b++) {
+            for (int b = offset, end = offset + length; b < end; b++) {
                 i += list[b].remaining();
             }
             return i;
         }
     }
 
+    /**
+     * Read-only view over a sequence of ByteBuffers, addressed as one
+     * contiguous (big-endian) buffer.
+     * <p/>
+     * The view is built over slices of the components' remaining bytes, so
+     * nothing is copied and the components' own positions are left alone.
+     * Multi-byte values may straddle components. nioBuffers() hands back the
+     * bytes between position and limit ready for a gathering write, e.g.
+     * <code>channel.write(buf.nioBuffers(), 0, n, ...)</code> followed by
+     * <code>buf.skip(written)</code>.
+     * <p/>
+     * Like ByteBuffer, instances are not thread-safe.
+     */
+    public static class CompositeBuffer {
+
+        private static final ByteBuffer[] EMPTY = new ByteBuffer[0];
+
+        private final ByteBuffer[] components;
+        private final int[] starts;
+        private final int capacity;
+
+        private int position;
+        private int limit;
+        private int current;  // <= Component last looked up
+
+        public CompositeBuffer(ByteBuffer... buffers) {
+            this(buffers, 0, buffers.length);
+        }
+
+        public CompositeBuffer(ByteBuffer[] buffers, int offset, int length) {
+            this.components = new ByteBuffer[length];
+            this.starts = new int[length];
+            int cap = 0;
+            for (int i = 0; i < length; i++) {
+                components[i] = buffers[offset + i].slice().asReadOnlyBuffer();
+                starts[i] = cap;
+                cap += components[i].capacity();
+            }
+            this.capacity = cap;
+            this.limit = cap;
+        }
+
+        public int capacity() {
+            return capacity;
+        }
+
+        public int position() {
+            return position;
+        }
+
+        public CompositeBuffer position(int newPosition) {
+            if (newPosition < 0 || newPosition > limit)
+                throw new IllegalArgumentException("Invalid position: " + newPosition);
+            position = newPosition;
+            return this;
+        }
+
+        public int limit() {
+            return limit;
+        }
+
+        public CompositeBuffer limit(int newLimit) {
+            if (newLimit < 0 || newLimit > capacity)
+                throw new IllegalArgumentException("Invalid limit: " + newLimit);
+            limit = newLimit;
+            if (position > limit) {
+                position = limit;
+            }
+            return this;
+        }
+
+        public int remaining() {
+            return limit - position;
+        }
+
+        public boolean hasRemaining() {
+            return position < limit;
+        }
+
+        public CompositeBuffer skip(int n) {
+            return position(position + n);
+        }
+
+        public int componentCount() {
+            return components.length;
+        }
+
+        // Relative GET Methods
+        public byte get() {
+            byte b = get(checkRemaining(1));
+            position++;
+            return b;
+        }
+
+        public short getShort() {
+            short s = getShort(checkRemaining(2));
+            position += 2;
+            return s;
+        }
+
+        public int getInt() {
+            int i = getInt(checkRemaining(4));
+            position += 4;
+            return i;
+        }
+
+        public long getLong() {
+            long l = getLong(checkRemaining(8));
+            position += 8;
+            return l;
+        }
+
+        public CompositeBuffer get(byte[] dst) {
+            return get(dst, 0, dst.length);
+        }
+
+        public CompositeBuffer get(byte[] dst, int offset, int length) {
+            checkRemaining(length);
+            int index = position;
+            while (length > 0) {
+                int c = component(index);
+                ByteBuffer src = components[c].duplicate();
+                src.position(index - starts[c]);
+                int n = Math.min(length, src.remaining());
+                src.get(dst, offset, n);
+                index += n;
+                offset += n;
+                length -= n;
+            }
+            position = index;
+            return this;
+        }
+
+        // Absolute GET Methods
+        public byte get(int index) {
+            checkIndex(index, 1);
+            int c = component(index);
+            return components[c].get(index - starts[c]);
+        }
+
+        public short getShort(int index) {
+            checkIndex(index, 2);
+            int c = component(index);
+            int i = index - starts[c];
+            if (components[c].capacity() - i >= 2) {
+                return components[c].getShort(i);
+            }
+            return (short) straddle(index, 2);
+        }
+
+        public int getInt(int index) {
+            checkIndex(index, 4);
+            int c = component(index);
+            int i = index - starts[c];
+            if (components[c].capacity() - i >= 4) {
+                return components[c].getInt(i);
+            }
+            return (int) straddle(index, 4);
+        }
+
+        public long getLong(int index) {
+            checkIndex(index, 8);
+            int c = component(index);
+            int i = index - starts[c];
+            if (components[c].capacity() - i >= 8) {
+                return components[c].getLong(i);
+            }
+            return straddle(index, 8);
+        }
+
+        /**
+         * Returns the absolute index of the first occurrence of the byte
+         * between position and limit, or -1 if there is none.
+         */
+        public int indexOf(byte b) {
+            return indexOf(b, position, limit);
+        }
+
+        /**
+         * Returns the absolute index of the first occurrence of the byte in
+         * [from, to), or -1 if there is none.
+         */
+        public int indexOf(byte b, int from, int to) {
+            if (from < 0 || to > limit || from > to)
+                throw new IndexOutOfBoundsException("from: " + from + ", to: " + to);
+            if (from == to) {
+                return -1;
+            }
+            for (int c = component(from); c < components.length && starts[c] < to; c++) {
+                ByteBuffer buf = components[c];
+                int end = Math.min(buf.capacity(), to - starts[c]);
+                for (int i = Math.max(0, from - starts[c]); i < end; i++) {
+                    if (buf.get(i) == b) {
+                        return starts[c] + i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Returns a view of the bytes between position and limit.
+         */
+        public CompositeBuffer slice() {
+            return slice(position, remaining());
+        }
+
+        /**
+         * Returns a view of <code>length</code> bytes starting at absolute
+         * <code>index</code>, sharing the components' content.
+         */
+        public CompositeBuffer slice(int index, int length) {
+            ByteBuffer[] buffers = nioBuffers(index, length);
+            return new CompositeBuffer(buffers, 0, buffers.length);
+        }
+
+        /**
+         * Returns the bytes between position and limit as read-only
+         * ByteBuffers, one per component spanned, for gathering writes.
+         */
+        public ByteBuffer[] nioBuffers() {
+            return nioBuffers(position, remaining());
+        }
+
+        public ByteBuffer[] nioBuffers(int index, int length) {
+            if (length == 0) {
+                return EMPTY;
+            }
+            checkIndex(index, length);
+
+            int first = component(index), last = component(index + length - 1);
+            ByteBuffer[] buffers = new ByteBuffer[last - first + 1];
+            for (int c = first; c <= last; c++) {
+                ByteBuffer buf = components[c].duplicate();
+                buf.limit(Math.min(buf.capacity(), index + length - starts[c]));
+                buf.position(Math.max(0, index - starts[c]));
+                buffers[c - first] = buf;
+            }
+            return buffers;
+        }
+
+        private long straddle(int index, int size) {
+            long value = 0;
+            for (int i = 0; i < size; i++) {
+                value = (value << 8) | (get(index + i) & 0xff);
+            }
+            return value;
+        }
+
+        private int component(int index) {
+            int c = current;
+            if (c < components.length && index >= starts[c] && index - starts[c] < components[c].capacity()) {
+                return c;
+            }
+
+            // Last component starting at or before index (skips empty components)
+            int lo = 0, hi = components.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (starts[mid] <= index) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            current = lo;
+            return lo;
+        }
+
+        private int checkRemaining(int n) {
+            if (limit - position < n)
+                throw new BufferUnderflowException();
+            return position;
+        }
+
+        private void checkIndex(int index, int n) {
+            if (index < 0 || n > limit - index)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + n + ", Limit: " + limit);
+        }
+
+        @Override
+        public String toString() {
+            return "CompositeBuffer[pos=" + position + " lim=" + limit + " cap=" + capacity + " components=" + components.length + "]";
+        }
+    }
+
+    /**
+     * Bounded pool of equally sized ByteBuffers (direct by default).
+     * <p/>
+     * Direct buffers are expensive to allocate and release, so long-lived
+     * per-channel buffers are borrowed from here and handed back on close.
+     * When the pool is empty a new buffer is allocated; when it is full,
+     * released buffers are simply dropped.
+     */
+    public static class BufferPool {
+
+        private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+        private final AtomicInteger pooled = new AtomicInteger();
+
+        private final int bufferSize;
+        private final int maxPooled;
+        private final boolean direct;
+
+        public BufferPool(int bufferSize, int maxPooled) {
+            this(bufferSize, maxPooled, true);
+        }
+
+        public BufferPool(int bufferSize, int maxPooled, boolean direct) {
+            if (bufferSize <= 0)
+                throw new IllegalArgumentException("Invalid buffer size: " + bufferSize);
+            this.bufferSize = bufferSize;
+            this.maxPooled = maxPooled;
+            this.direct = direct;
+        }
+
+        public int bufferSize() {
+            return bufferSize;
+        }
+
+        public int size() {
+            return pooled.get();
+        }
+
+        /**
+         * Returns a cleared buffer.
+         */
+        public ByteBuffer acquire() {
+            ByteBuffer buf = buffers.poll();
+            if (buf == null) {
+                return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+            }
+            pooled.decrementAndGet();
+            buf.clear();
+            return buf;
+        }
+
+        public void release(ByteBuffer buf) {
+            if (buf == null || buf.capacity() != bufferSize || buf.isDirect() != direct) {
+                return;
+            }
+            if (pooled.incrementAndGet() > maxPooled) {
+                pooled.decrementAndGet();
+                return;
+            }
+            buffers.offer(buf);
+        }
+    }
+
     private Nio() {
     } // Singleton
 }
@@ -1,11 +1,18 @@
 package async.nio.util;
 
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 public class Selectors {
@@ -13,7 +20,8 @@ public class Selectors {
     protected static final Logger LOG = Logger.getLogger(Selectors.class);// .setDebug(true);
 
     public static Selector replaceSelector(Selector sel) throws IOException {
-        LOG.warning("Replacing Selector: " + sel);
+        if (LOG.isWarnEnabled())
+            LOG.warn("Replacing Selector: {0}", sel);
 
         Selector oldSelector = sel;
         Selector newSelector = null;
@@ -40,6 +48,209 @@ public class Selectors {
         }
     }
 
+    /**
+     * Array-backed selected-key set installed in place of the selector's
+     * HashSet: adding is an array store, iteration is index-based and
+     * reset() only clears the slots used, so a select loop allocates nothing.
+     * <p/>
+     * Only supports what SelectorImpl needs (add, size, iteration); contains()
+     * always answers false, which at worst lets a key be added twice.
+     */
+    public static final class SelectedKeySet extends AbstractSet<SelectionKey> {
+
+        private SelectionKey[] keys = new SelectionKey[1024];
+        private int size;
+
+        @Override
+        public boolean add(SelectionKey key) {
+            if (key == null) {
+                return false;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size << 1);
+            }
+            keys[size++] = key;
+            return true;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return false;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return false;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        public SelectionKey get(int i) {
+            return keys[i];
+        }
+
+        public void reset() {
+            Arrays.fill(keys, 0, size, null);
+            size = 0;
+        }
+
+        @Override
+        public Iterator<SelectionKey> iterator() {
+            return new Iterator<SelectionKey>() {
+                private int i;
+
+                @Override
+                public boolean hasNext() {
+                    return i < size;
+                }
+
+                @Override
+                public SelectionKey next() {
+                    if (i >= size)
+                        throw new NoSuchElementException();
+                    return keys[i++];
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    public static final String DISABLE_KEYSET_OPTIMIZATION = "async.nio.util.Selectors.DISABLE_KEYSET_OPTIMIZATION";
+
+    /**
+     * Replaces the selector's selected-key sets with a SelectedKeySet.
+     *
+     * @return the installed set, or null if the selector's internals are not
+     *         accessible (e.g. JDK9+ without --add-opens java.base/sun.nio.ch)
+     */
+    public static SelectedKeySet installSelectedKeySet(Selector selector) {
+        if (Boolean.getBoolean(DISABLE_KEYSET_OPTIMIZATION)) {
+            return null;
+        }
+        try {
+            Class<?> impl = Class.forName("sun.nio.ch.SelectorImpl", false, ClassLoader.getSystemClassLoader());
+            if (!impl.isAssignableFrom(selector.getClass())) {
+                return null;
+            }
+            Field selectedKeys = impl.getDeclaredField("selectedKeys");
+            Field publicSelectedKeys = impl.getDeclaredField("publicSelectedKeys");
+            selectedKeys.setAccessible(true);
+            publicSelectedKeys.setAccessible(true);
+
+            SelectedKeySet keySet = new SelectedKeySet();
+            selectedKeys.set(selector, keySet);
+            publicSelectedKeys.set(selector, keySet);
+            return keySet;
+        } catch (Exception e) {
+            // Reflection blocked (InaccessibleObjectException is a RuntimeException)
+            if (LOG.isDebugEnabled())
+                LOG.debug("installSelectedKeySet(): {0}", e);
+            return null;
+        }
+    }
+
+    /**
+     * Incremental replacement of a selector: keys are moved to the target
+     * selector a batch at a time so that rebuilding a selector with many
+     * keys does not stall its owner. Until done(), both selectors hold live
+     * keys and must be polled.
+     * <p/>
+     * Not thread-safe: must only be used from the thread owning both selectors.
+     */
+    public static class Migration {
+
+        private final Selector source;
+        private final Selector target;
+        private final SelectionKey[] keys;
+        private int next;
+
+        public Migration(Selector source, Selector target) {
+            this.source = source;
+            this.target = target;
+            this.keys = getKeys(source).toArray(new SelectionKey[0]);
+        }
+
+        public Selector source() {
+            return source;
+        }
+
+        public Selector target() {
+            return target;
+        }
+
+        public boolean done() {
+            return next >= keys.length;
+        }
+
+        /**
+         * Moves up to max keys to the target selector.
+         *
+         * @return the number of keys moved
+         */
+        public int migrate(int max) {
+            int moved = 0;
+            for (int end = Math.min(keys.length, next + max); next < end; next++) {
+                if (migrate(keys[next]) != null) {
+                    moved++;
+                }
+                keys[next] = null;
+            }
+            return moved;
+        }
+
+        /**
+         * Moves the channel's key right away (e.g. when its interest
+         * changes before its batch comes up).
+         *
+         * @return the channel's key in the target selector, or null if it
+         *         was not registered with the source
+         */
+        public SelectionKey migrate(SelectableChannel channel) {
+            SelectionKey key = channel.keyFor(source);
+            return (key == null) ? null : migrate(key);
+        }
+
+        private SelectionKey migrate(SelectionKey key) {
+            if (!key.isValid()) {
+                return null;
+            }
+            try {
+                int ops = key.interestOps();
+                Object attachment = key.attachment();
+                key.cancel();
+
+                SelectionKey moved = key.channel().keyFor(target);
+                if (moved == null) {
+                    return key.channel().register(target, ops, attachment);
+                }
+                moved.interestOps(moved.interestOps() | ops);
+                return moved;
+            } catch (CancelledKeyException ignore) {
+            } catch (ClosedChannelException ignore) {
+            }
+            return null;
+        }
+
+        /**
+         * Moves any remaining keys and closes the source selector.
+         */
+        public int finish() {
+            int moved = migrate(keys.length);
+            try {
+                source.close();
+            } catch (IOException ignore) {
+            }
+            return moved;
+        }
+    }
+
     private static Set<SelectionKey> getKeys(Selector sel) {
         try {
             return sel.keys();
@@ -0,0 +1,67 @@
+package async.nio.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free single-producer single-consumer ring.
+ * <p/>
+ * offer() must only be called by one producer thread and poll() by one
+ * consumer thread. offer() publishes with a full fence, so a producer may
+ * check a consumer's "parked" flag right after it without missing a wakeup.
+ */
+public class SpscRing<E> {
+
+    private final Object[] buffer;
+    private final int mask;
+
+    private final AtomicLong head = new AtomicLong();   // <= next slot to poll
+    private final AtomicLong tail = new AtomicLong();   // <= next slot to fill
+
+    public SpscRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of 2: " + capacity);
+        this.buffer = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * @return false if the ring is full
+     */
+    public boolean offer(E e) {
+        if (e == null)
+            throw new NullPointerException();
+
+        long t = tail.get();
+        if (t - head.get() == buffer.length) {
+            return false;
+        }
+        buffer[(int) t & mask] = e;
+        tail.set(t + 1);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long h = head.get();
+        if (h == tail.get()) {
+            return null;
+        }
+        int i = (int) h & mask;
+        E e = (E) buffer[i];
+        buffer[i] = null;
+        head.lazySet(h + 1);
+        return e;
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+}
@@ -0,0 +1,92 @@
+/* @test
+ * @summary Unit test for dispatcher-affine notifier workers
+ * @run main Affine
+ */
+
+import async.nio.channels.AsyncChannels.AsynchronousChannelGroup;
+import async.nio.channels.AsyncChannels.CompletionHandler;
+import async.nio.channels.AsyncSocketChannels.AsynchronousSocketChannel;
+import async.nio.channels.impl.AsyncChannelGroup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class Affine {
+
+    static final int CHANNELS = 4;
+    static final int ROUNDS = 100;
+
+    public static void main(String[] args) throws Exception {
+        testAffine(false);
+        testAffine(true);
+        System.out.println("finished.");
+    }
+
+    static ServerSocketChannel newServer() throws IOException {
+        ServerSocketChannel ssc = ServerSocketChannel.open();
+        ssc.socket().bind(new InetSocketAddress(InetAddress.getLocalHost(), 0));
+        return ssc;
+    }
+
+    // With affine notifiers a channel completes on a worker of its own
+    // dispatcher; without stealing, always on the same one
+    static void testAffine(boolean stealing) throws Exception {
+        System.out.println("-- affine, stealing: " + stealing + " --");
+
+        AsyncChannelGroup group = (AsyncChannelGroup) AsynchronousChannelGroup.withFixedThreadPool(2,
+                Executors.defaultThreadFactory());
+        group.setAffineNotifiers(2, stealing);
+        ServerSocketChannel ssc = newServer();
+
+        for (int c = 0; c < CHANNELS; c++) {
+            AsynchronousSocketChannel ch = AsynchronousSocketChannel.open(group);
+            ch.connect(ssc.socket().getLocalSocketAddress()).get();
+            SocketChannel peer = ssc.accept();
+
+            final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+            for (int i = 0; i < ROUNDS; i++) {
+                final CountDownLatch done = new CountDownLatch(1);
+                final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+                ch.read(ByteBuffer.allocate(1), null, new CompletionHandler<Integer, Object>() {
+                    @Override
+                    public void completed(Integer n, Object attachment) {
+                        threads.add(Thread.currentThread().getName());
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void failed(Throwable exc, Object attachment) {
+                        error.set(exc);
+                        done.countDown();
+                    }
+                });
+                peer.write(ByteBuffer.wrap(new byte[]{1}));
+                if (!done.await(10, TimeUnit.SECONDS) || error.get() != null)
+                    throw new RuntimeException("Read failed", error.get());
+            }
+
+            for (String name : threads) {
+                if (!name.startsWith("AsyncChannelNotifier"))
+                    throw new RuntimeException("Completed on " + name);
+            }
+            if (!stealing && threads.size() != 1)
+                throw new RuntimeException("Completed on several workers: " + threads);
+
+            ch.close();
+            peer.close();
+        }
+        ssc.close();
+        group.shutdownNow();
+    }
+}
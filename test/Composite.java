@@ -0,0 +1,144 @@
+/* @test
+ * @summary Unit test for CompositeBuffer
+ * @run main Composite
+ */
+
+import async.nio.util.Nio.CompositeBuffer;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class Composite {
+
+    static final Random rand = new Random();
+
+    public static void main(String[] args) throws Exception {
+        testStraddle();
+        testRandom();
+        testRelative();
+        System.out.println("finished.");
+    }
+
+    // Components of the given lengths, each at a non-zero position, filled from flat
+    static ByteBuffer[] components(byte[] flat, int... lengths) {
+        ByteBuffer[] bufs = new ByteBuffer[lengths.length];
+        int k = 0;
+        for (int i = 0; i < lengths.length; i++) {
+            bufs[i] = (i % 2 == 0) ? ByteBuffer.allocate(lengths[i] + 2) : ByteBuffer.allocateDirect(lengths[i] + 2);
+            bufs[i].position(1);
+            bufs[i].limit(1 + lengths[i]);
+            for (int j = 0; j < lengths[i]; j++) {
+                bufs[i].put(1 + j, flat[k++]);
+            }
+        }
+        return bufs;
+    }
+
+    static byte[] randomBytes(int len) {
+        byte[] b = new byte[len];
+        rand.nextBytes(b);
+        return b;
+    }
+
+    // Multi-byte reads straddling one, two and empty component boundaries
+    static void testStraddle() {
+        System.out.println("-- straddle --");
+
+        byte[] flat = randomBytes(16);
+        ByteBuffer ref = ByteBuffer.wrap(flat);
+        CompositeBuffer cb = new CompositeBuffer(components(flat, 3, 1, 0, 2, 10));
+
+        if (cb.capacity() != 16 || cb.componentCount() != 5)
+            throw new RuntimeException("Bad composite: " + cb);
+        for (int i = 0; i < 16; i++) {
+            if (cb.get(i) != flat[i])
+                throw new RuntimeException("get(" + i + ")");
+        }
+        for (int i = 0; i + 8 <= 16; i++) {
+            if (cb.getLong(i) != ref.getLong(i) || cb.getInt(i) != ref.getInt(i) || cb.getShort(i) != ref.getShort(i))
+                throw new RuntimeException("Straddling read at " + i);
+        }
+        try {
+            cb.getLong(9);
+            throw new RuntimeException("Read past the limit accepted");
+        } catch (IndexOutOfBoundsException x) {
+        }
+    }
+
+    // Random layouts: lookup in any order, indexOf, slices and gathering views
+    static void testRandom() {
+        System.out.println("-- random layouts --");
+
+        for (int t = 0; t < 300; t++) {
+            int n = rand.nextInt(6) + 1;
+            int[] lengths = new int[n];
+            int total = 0;
+            for (int i = 0; i < n; i++) {
+                total += lengths[i] = rand.nextInt(12);
+            }
+            byte[] flat = randomBytes(total);
+            ByteBuffer[] bufs = components(flat, lengths);
+            CompositeBuffer cb = new CompositeBuffer(bufs);
+
+            for (int i = 0; i < total; i++) {
+                int index = rand.nextInt(total);
+                if (cb.get(index) != flat[index])
+                    throw new RuntimeException("get(" + index + ")");
+            }
+
+            if (total > 0) {
+                byte b = flat[rand.nextInt(total)];
+                int expected = -1;
+                for (int i = 0; i < total; i++) {
+                    if (flat[i] == b) {
+                        expected = i;
+                        break;
+                    }
+                }
+                if (cb.indexOf(b) != expected)
+                    throw new RuntimeException("indexOf: " + cb.indexOf(b) + " != " + expected);
+            }
+
+            int from = (total == 0) ? 0 : rand.nextInt(total);
+            int len = rand.nextInt(total - from + 1);
+            byte[] out = new byte[len];
+            cb.slice(from, len).get(out);
+            for (int i = 0; i < len; i++) {
+                if (out[i] != flat[from + i])
+                    throw new RuntimeException("slice(" + from + ", " + len + ")");
+            }
+
+            int remaining = 0;
+            for (ByteBuffer buf : cb.slice(from, len).nioBuffers()) {
+                remaining += buf.remaining();
+            }
+            if (remaining != len)
+                throw new RuntimeException("nioBuffers: " + remaining + " != " + len);
+
+            for (ByteBuffer buf : bufs) {
+                if (buf.position() != 1)
+                    throw new RuntimeException("Component position moved");
+            }
+        }
+    }
+
+    static void testRelative() {
+        System.out.println("-- relative reads --");
+
+        byte[] flat = randomBytes(15);
+        ByteBuffer ref = ByteBuffer.wrap(flat);
+        CompositeBuffer cb = new CompositeBuffer(components(flat, 5, 5, 5));
+
+        if (cb.get() != ref.get() || cb.getShort() != ref.getShort() || cb.getInt() != ref.getInt()
+                || cb.getLong() != ref.getLong())
+            throw new RuntimeException("Relative reads");
+        if (cb.remaining() != 0)
+            throw new RuntimeException("Remaining: " + cb.remaining());
+        try {
+            cb.get();
+            throw new RuntimeException("Underflow expected");
+        } catch (BufferUnderflowException x) {
+        }
+    }
+}
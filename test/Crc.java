@@ -0,0 +1,149 @@
+/* @test
+ * @summary Unit test for Crc32C combine and parallel checksums
+ * @run main Crc
+ */
+
+import async.nio.util.Checksums.Crc32C;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class Crc {
+
+    static final Random rand = new Random();
+
+    public static void main(String[] args) throws Exception {
+        testKnownValue();
+        testRegion();
+        testCombine();
+        testParallelBuffer();
+        testParallelFile();
+        System.out.println("finished.");
+    }
+
+    // Bitwise CRC32-C, the reference for everything below
+    static int reference(byte[] b, int off, int len) {
+        int crc = 0xffffffff;
+        for (int i = off; i < off + len; i++) {
+            crc ^= b[i] & 0xff;
+            for (int k = 0; k < 8; k++) {
+                crc = (crc >>> 1) ^ (0x82F63B78 & -(crc & 1));
+            }
+        }
+        return ~crc;
+    }
+
+    static int crc(byte[] b, int off, int len) {
+        Crc32C crc = new Crc32C();
+        crc.update(b, off, len);
+        return crc.getIntValue();
+    }
+
+    static byte[] randomBytes(int len) {
+        byte[] b = new byte[len];
+        rand.nextBytes(b);
+        return b;
+    }
+
+    static void check(int expected, int actual, String what) {
+        if (expected != actual)
+            throw new RuntimeException(what + ": expected " + Integer.toHexString(expected)
+                    + ", got " + Integer.toHexString(actual));
+    }
+
+    static void testKnownValue() {
+        System.out.println("-- known value --");
+
+        byte[] b = "123456789".getBytes();
+        check(0xE3069283, reference(b, 0, b.length), "reference");
+        check(0xE3069283, crc(b, 0, b.length), "Crc32C");
+    }
+
+    // update(buffer, offset, length) covers exactly [offset, offset + length)
+    static void testRegion() {
+        System.out.println("-- region update --");
+
+        byte[] b = randomBytes(1000);
+        ByteBuffer heap = ByteBuffer.wrap(b);
+        ByteBuffer direct = ByteBuffer.allocateDirect(b.length);
+        direct.put(b).flip();
+
+        for (ByteBuffer buf : new ByteBuffer[]{heap, direct}) {
+            Crc32C crc = new Crc32C();
+            crc.update(buf, 100, 500);
+            check(reference(b, 100, 500), crc.getIntValue(), "region");
+            if (buf.position() != 0)
+                throw new RuntimeException("Position moved: " + buf.position());
+
+            buf.limit(400);
+            try {
+                crc.update(buf, 100, 500);
+                throw new RuntimeException("Region past the limit accepted");
+            } catch (IndexOutOfBoundsException x) {
+            }
+            buf.clear();
+        }
+    }
+
+    static void testCombine() {
+        System.out.println("-- combine --");
+
+        for (int i = 0; i < 200; i++) {
+            byte[] b = randomBytes(rand.nextInt(5000));
+            int cut = (b.length == 0) ? 0 : rand.nextInt(b.length);
+            int a = crc(b, 0, cut);
+            int z = crc(b, cut, b.length - cut);
+            check(reference(b, 0, b.length), Crc32C.combine(a, z, b.length - cut), "combine at " + cut);
+        }
+    }
+
+    static void testParallelBuffer() {
+        System.out.println("-- parallel buffer --");
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int len : new int[]{0, 1000, Crc32C.PARALLEL_THRESHOLD, 5 * Crc32C.PARALLEL_THRESHOLD + 12345}) {
+                byte[] b = randomBytes(len + 7);
+                ByteBuffer buf = ByteBuffer.allocateDirect(b.length);
+                buf.put(b).flip();
+                buf.position(7);
+                check(reference(b, 7, len), Crc32C.parallel(buf, pool), "parallel " + len);
+                if (buf.position() != 7)
+                    throw new RuntimeException("Position moved: " + buf.position());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static void testParallelFile() throws Exception {
+        System.out.println("-- parallel file --");
+
+        byte[] b = randomBytes(3 * Crc32C.PARALLEL_THRESHOLD + 999);
+        File file = File.createTempFile("crc", ".bin");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(b);
+        } finally {
+            out.close();
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel fc = raf.getChannel();
+            check(reference(b, 0, b.length), Crc32C.parallel(fc, 0, b.length, pool), "whole file");
+            check(reference(b, 100, b.length - 200), Crc32C.parallel(fc, 100, b.length - 200, pool), "file region");
+        } finally {
+            raf.close();
+            pool.shutdown();
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/* @test
+ * @summary Unit test for graceful group drains
+ * @run main Drain
+ */
+
+import async.nio.channels.AsyncChannels.AsynchronousChannelGroup;
+import async.nio.channels.AsyncSocketChannels.AsynchronousSocketChannel;
+import async.nio.channels.impl.AsyncChannelGroup;
+import async.nio.channels.impl.GroupDrain;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class Drain {
+
+    public static void main(String[] args) throws Exception {
+        testIdleReaders();
+        testSystemGroup();
+        System.out.println("finished.");
+    }
+
+    // Channels only waiting on their peer do not hold the drain until its
+    // deadline: they are closed as soon as they are found
+    static void testIdleReaders() throws Exception {
+        System.out.println("-- idle readers --");
+
+        AsyncChannelGroup group = (AsyncChannelGroup) AsynchronousChannelGroup.withFixedThreadPool(2,
+                Executors.defaultThreadFactory());
+        ServerSocketChannel ssc = ServerSocketChannel.open();
+        ssc.socket().bind(new InetSocketAddress(InetAddress.getLocalHost(), 0));
+
+        final int READERS = 5, IDLE = 3;
+        List<SocketChannel> peers = new ArrayList<SocketChannel>();
+        List<Future<Integer>> reads = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < READERS + IDLE; i++) {
+            AsynchronousSocketChannel ch = AsynchronousSocketChannel.open(group);
+            ch.connect(ssc.socket().getLocalSocketAddress()).get();
+            peers.add(ssc.accept());
+            if (i < READERS) {
+                reads.add(ch.read(ByteBuffer.allocate(16)));
+            }
+        }
+
+        long start = System.nanoTime();
+        GroupDrain drain = group.drain(10, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+        long took = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.out.println(drain + " in " + took + " ms");
+
+        if (drain.closedReading() != READERS || drain.closedQuiescent() != IDLE || drain.closedForcibly() != 0)
+            throw new RuntimeException("Unexpected drain: " + drain);
+        for (Future<Integer> read : reads) {
+            try {
+                read.get(5, TimeUnit.SECONDS);
+                throw new RuntimeException("Read should have failed");
+            } catch (ExecutionException x) {
+                if (!(x.getCause() instanceof AsynchronousCloseException))
+                    throw new RuntimeException("AsynchronousCloseException expected: " + x.getCause());
+            }
+        }
+
+        for (SocketChannel peer : peers) {
+            peer.close();
+        }
+        ssc.close();
+    }
+
+    // Shutting down the system-wide group leaves it usable
+    static void testSystemGroup() throws Exception {
+        System.out.println("-- system group --");
+
+        AsyncChannelGroup group = (AsyncChannelGroup) AsynchronousChannelGroup.defaultGroup();
+        group.shutdown();
+        if (group.isShutdown())
+            throw new RuntimeException("System group shut down");
+
+        ServerSocketChannel ssc = ServerSocketChannel.open();
+        ssc.socket().bind(new InetSocketAddress(InetAddress.getLocalHost(), 0));
+        AsynchronousSocketChannel ch = AsynchronousSocketChannel.open(group);
+        ch.connect(ssc.socket().getLocalSocketAddress()).get(10, TimeUnit.SECONDS);
+        ch.close();
+        ssc.close();
+    }
+}
@@ -0,0 +1,319 @@
+/* @test
+ * @summary Unit test for frame codecs and AsyncFrameChannel
+ * @run main Frames
+ */
+
+import async.nio.channels.AsyncChannels.AsynchronousChannelGroup;
+import async.nio.channels.AsyncSocketChannels.AsynchronousSocketChannel;
+import async.nio.channels.AsyncSocketChannels.DelimitedCodec;
+import async.nio.channels.AsyncSocketChannels.FrameCodec;
+import async.nio.channels.AsyncSocketChannels.LengthPrefixedCodec;
+import async.nio.channels.Exceptions.ReadPendingException;
+import async.nio.channels.impl.AsyncChannelGroup;
+import async.nio.channels.impl.AsyncFrameChannel;
+import async.nio.channels.impl.AsyncSocketChannel;
+import async.nio.util.Nio.BufferPool;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class Frames {
+
+    public static void main(String[] args) throws Exception {
+        testLengthPrefixed();
+        testDelimited();
+        testDelimiterStraddlesScan();
+        testFrameChannel();
+        testCloseWhileReading();
+        testTruncatedFrame();
+        testOversizedFrame();
+        testRejectedRead();
+        System.out.println("finished.");
+    }
+
+    static String string(ByteBuffer buf) {
+        byte[] b = new byte[buf.remaining()];
+        buf.duplicate().get(b);
+        return new String(b);
+    }
+
+    // Encodes the payloads back to back
+    static ByteBuffer encode(FrameCodec codec, String... payloads) {
+        ByteBuffer out = ByteBuffer.allocate(1024);
+        for (String payload : payloads) {
+            for (ByteBuffer part : codec.encode(ByteBuffer.wrap(payload.getBytes()))) {
+                out.put(part);
+            }
+        }
+        out.flip();
+        return out;
+    }
+
+    static void testLengthPrefixed() throws Exception {
+        System.out.println("-- length prefixed --");
+
+        for (int header : new int[]{1, 2, 4}) {
+            FrameCodec codec = new LengthPrefixedCodec(header, 100);
+            ByteBuffer in = encode(codec, "a", "", "ccc");
+
+            // Partial header and partial payload leave the position untouched
+            int end = in.limit();
+            in.limit(header - 1);
+            if (codec.decode(in, 0) != null || in.position() != 0)
+                throw new RuntimeException("Partial header decoded");
+            in.limit(header);
+            if (codec.decode(in, 0) != null || in.position() != 0)
+                throw new RuntimeException("Partial payload decoded");
+            in.limit(end);
+
+            for (String expected : new String[]{"a", "", "ccc"}) {
+                ByteBuffer frame = codec.decode(in, 0);
+                if (frame == null || !string(frame).equals(expected))
+                    throw new RuntimeException("Expected \"" + expected + "\", got " + frame);
+            }
+            if (in.hasRemaining() || codec.decode(in, 0) != null)
+                throw new RuntimeException("Trailing bytes");
+        }
+
+        ByteBuffer tooLong = ByteBuffer.allocate(4);
+        tooLong.putInt(0, 101);
+        try {
+            new LengthPrefixedCodec(4, 100).decode(tooLong, 0);
+            throw new RuntimeException("Oversized frame accepted");
+        } catch (IOException x) {
+        }
+    }
+
+    static void testDelimited() throws Exception {
+        System.out.println("-- delimited --");
+
+        FrameCodec codec = new DelimitedCodec("\r\n".getBytes(), 10);
+        ByteBuffer in = encode(codec, "one", "", "three");
+        for (String expected : new String[]{"one", "", "three"}) {
+            ByteBuffer frame = codec.decode(in, 0);
+            if (frame == null || !string(frame).equals(expected))
+                throw new RuntimeException("Expected \"" + expected + "\", got " + frame);
+        }
+        if (codec.decode(in, 0) != null)
+            throw new RuntimeException("Decoded past the last delimiter");
+
+        try {
+            codec.decode(ByteBuffer.wrap("0123456789ABCDEF".getBytes()), 0);
+            throw new RuntimeException("Oversized frame accepted");
+        } catch (IOException x) {
+        }
+    }
+
+    // A delimiter split across two reads is found when resuming the scan
+    static void testDelimiterStraddlesScan() throws Exception {
+        System.out.println("-- delimiter straddling the scanned bytes --");
+
+        FrameCodec codec = new DelimitedCodec("\r\n".getBytes(), 100);
+        ByteBuffer in = ByteBuffer.allocate(100);
+        in.put("abc\r".getBytes()).flip();
+        if (codec.decode(in, 0) != null)
+            throw new RuntimeException("Incomplete frame decoded");
+        int scanned = in.remaining();
+
+        in.compact();
+        in.put("\nxyz".getBytes()).flip();
+        ByteBuffer frame = codec.decode(in, scanned);
+        if (frame == null || !string(frame).equals("abc"))
+            throw new RuntimeException("Expected \"abc\", got " + frame);
+        if (in.position() != 5)
+            throw new RuntimeException("Position: " + in.position());
+    }
+
+    static AsyncSocketChannel connect(AsyncChannelGroup group, ServerSocketChannel ssc) throws Exception {
+        AsyncSocketChannel ch = (AsyncSocketChannel) AsynchronousSocketChannel.open(group);
+        ch.connect(ssc.socket().getLocalSocketAddress()).get();
+        return ch;
+    }
+
+    static ServerSocketChannel newServer() throws IOException {
+        ServerSocketChannel ssc = ServerSocketChannel.open();
+        ssc.socket().bind(new InetSocketAddress(InetAddress.getLocalHost(), 0));
+        return ssc;
+    }
+
+    static void testFrameChannel() throws Exception {
+        System.out.println("-- frame channel --");
+
+        AsyncChannelGroup group = (AsyncChannelGroup) AsynchronousChannelGroup.withFixedThreadPool(2,
+                Executors.defaultThreadFactory());
+        ServerSocketChannel ssc = newServer();
+        AsyncSocketChannel ch = connect(group, ssc);
+        SocketChannel peer = ssc.accept();
+        AsyncFrameChannel fc = new AsyncFrameChannel(ch, new LengthPrefixedCodec(4, 1 << 16));
+
+        // Outbound: header + payload per frame, gathered in one write
+        long n = fc.writeFrames(ByteBuffer.wrap("hello".getBytes()), ByteBuffer.wrap("world!".getBytes())).get();
+        if (n != 19)
+            throw new RuntimeException("Written: " + n);
+        ByteBuffer got = ByteBuffer.allocate(19);
+        while (got.hasRemaining()) {
+            peer.read(got);
+        }
+        got.flip();
+        if (got.getInt() != 5)
+            throw new RuntimeException("Bad header");
+
+        // Inbound: three frames, the first read stopping inside a header
+        ByteBuffer raw = encode(fc.codec(), "a", "bb", "ccc");
+        ByteBuffer head = raw.duplicate();
+        head.limit(3);
+        peer.write(head);
+        Future<List<ByteBuffer>> result = fc.readFrames();
+        Thread.sleep(200);
+        if (result.isDone())
+            throw new RuntimeException("Partial frame completed the read");
+        raw.position(3);
+        peer.write(raw);
+        List<ByteBuffer> frames = result.get(10, TimeUnit.SECONDS);
+        if (frames.size() != 3 || !string(frames.get(2)).equals("ccc"))
+            throw new RuntimeException("Bad batch: " + frames);
+
+        // End of stream completes with an empty batch
+        peer.close();
+        if (!fc.readFrames().get(10, TimeUnit.SECONDS).isEmpty())
+            throw new RuntimeException("Empty batch expected at end of stream");
+
+        fc.close();
+        ssc.close();
+        group.shutdownNow();
+    }
+
+    // Closing during a read fails it and returns the buffer to the pool once
+    static void testCloseWhileReading() throws Exception {
+        System.out.println("-- close while reading --");
+
+        AsyncChannelGroup group = (AsyncChannelGroup) AsynchronousChannelGroup.withFixedThreadPool(2,
+                Executors.defaultThreadFactory());
+        ServerSocketChannel ssc = newServer();
+        AsyncSocketChannel ch = connect(group, ssc);
+        SocketChannel peer = ssc.accept();
+        BufferPool pool = new BufferPool(1024, 4);
+        AsyncFrameChannel fc = new AsyncFrameChannel(ch, new LengthPrefixedCodec(4, 1000), pool);
+
+        Future<List<ByteBuffer>> result = fc.readFrames();
+        fc.close();
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            throw new RuntimeException("Read should have failed");
+        } catch (ExecutionException x) {
+            System.out.println("read: " + x.getCause());
+        }
+        Thread.sleep(100);
+        if (pool.size() != 1)
+            throw new RuntimeException("Pooled buffers: " + pool.size());
+
+        peer.close();
+        ssc.close();
+        group.shutdownNow();
+    }
+
+    static AsyncChannelGroup newGroup() throws IOException {
+        return (AsyncChannelGroup) AsynchronousChannelGroup.withFixedThreadPool(2, Executors.defaultThreadFactory());
+    }
+
+    // Expects the read to fail with the given exception type
+    static void expectFailure(Future<List<ByteBuffer>> result, Class<? extends Throwable> type) throws Exception {
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            throw new RuntimeException("Read should have failed");
+        } catch (ExecutionException x) {
+            if (x.getCause().getClass() != type)
+                throw new RuntimeException(type.getSimpleName() + " expected: " + x.getCause());
+            System.out.println("read: " + x.getCause());
+        }
+    }
+
+    // The stream ending inside a frame fails the read with an EOFException
+    static void testTruncatedFrame() throws Exception {
+        System.out.println("-- truncated frame --");
+
+        AsyncChannelGroup group = newGroup();
+        ServerSocketChannel ssc = newServer();
+        AsyncSocketChannel ch = connect(group, ssc);
+        SocketChannel peer = ssc.accept();
+        AsyncFrameChannel fc = new AsyncFrameChannel(ch, new LengthPrefixedCodec(4, 1000));
+
+        ByteBuffer raw = ByteBuffer.allocate(7);
+        raw.putInt(10).put(new byte[3]).flip();
+        peer.write(raw);
+        peer.close();
+        expectFailure(fc.readFrames(), EOFException.class);
+
+        fc.close();
+        ssc.close();
+        group.shutdownNow();
+    }
+
+    // A frame larger than the read buffer fails the read with an IOException
+    static void testOversizedFrame() throws Exception {
+        System.out.println("-- oversized frame --");
+
+        AsyncChannelGroup group = newGroup();
+        ServerSocketChannel ssc = newServer();
+        AsyncSocketChannel ch = connect(group, ssc);
+        SocketChannel peer = ssc.accept();
+        AsyncFrameChannel fc = new AsyncFrameChannel(ch, new LengthPrefixedCodec(4, 1 << 16), new BufferPool(1024, 4));
+
+        ByteBuffer raw = ByteBuffer.allocate(4 + 2000);
+        raw.putInt(2000).position(raw.limit());
+        raw.flip();
+        while (raw.hasRemaining()) {
+            peer.write(raw);
+        }
+        expectFailure(fc.readFrames(), IOException.class);
+
+        fc.close();
+        peer.close();
+        ssc.close();
+        group.shutdownNow();
+    }
+
+    // A read rejected by the channel leaves the frame channel usable
+    static void testRejectedRead() throws Exception {
+        System.out.println("-- rejected read --");
+
+        AsyncChannelGroup group = newGroup();
+        ServerSocketChannel ssc = newServer();
+        AsyncSocketChannel ch = connect(group, ssc);
+        SocketChannel peer = ssc.accept();
+        BufferPool pool = new BufferPool(1024, 4);
+        AsyncFrameChannel fc = new AsyncFrameChannel(ch, new LengthPrefixedCodec(4, 1000), pool);
+
+        Future<Integer> other = ch.read(ByteBuffer.allocate(1));
+        try {
+            fc.readFrames();
+            throw new RuntimeException("ReadPendingException expected");
+        } catch (ReadPendingException x) {
+        }
+        peer.write(ByteBuffer.wrap(new byte[]{0}));
+        other.get(10, TimeUnit.SECONDS);
+
+        Future<List<ByteBuffer>> result = fc.readFrames();
+        peer.write(encode(fc.codec(), "ok"));
+        List<ByteBuffer> frames = result.get(10, TimeUnit.SECONDS);
+        if (frames.size() != 1 || !string(frames.get(0)).equals("ok"))
+            throw new RuntimeException("Bad batch: " + frames);
+
+        fc.close();
+        if (pool.size() != 1)
+            throw new RuntimeException("Pooled buffers: " + pool.size());
+        peer.close();
+        ssc.close();
+        group.shutdownNow();
+    }
+}
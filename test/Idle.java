@@ -0,0 +1,131 @@
+/* @test
+ * @summary Unit test for idle-connection reaping of AsyncChannelGroup
+ * @run main Idle
+ */
+
+import async.nio.channels.AsyncChannels.AsynchronousChannelGroup;
+import async.nio.channels.AsyncSocketChannels.AsynchronousSocketChannel;
+import async.nio.channels.Exceptions.InterruptedByTimeoutException;
+import async.nio.channels.impl.AsyncChannelGroup;
+import async.nio.dispatchers.IdleReaper;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class Idle {
+
+    static final long IDLE_MS = 300;
+
+    public static void main(String[] args) throws Exception {
+        testReapIdle();
+        testNotifyIdle();
+        testActiveNotReaped();
+        System.out.println("finished.");
+    }
+
+    static AsyncChannelGroup newGroup(IdleReaper.Policy policy) throws IOException {
+        AsyncChannelGroup group = (AsyncChannelGroup) AsynchronousChannelGroup.withFixedThreadPool(2,
+                Executors.defaultThreadFactory());
+        group.setIdleTimeout(IDLE_MS, TimeUnit.MILLISECONDS, policy);
+        return group;
+    }
+
+    static ServerSocketChannel newServer() throws IOException {
+        ServerSocketChannel ssc = ServerSocketChannel.open();
+        ssc.socket().bind(new InetSocketAddress(InetAddress.getLocalHost(), 0));
+        return ssc;
+    }
+
+    static AsynchronousSocketChannel connect(AsyncChannelGroup group, ServerSocketChannel ssc) throws Exception {
+        AsynchronousSocketChannel ch = AsynchronousSocketChannel.open(group);
+        ch.connect(ssc.socket().getLocalSocketAddress()).get();
+        return ch;
+    }
+
+    // an idle channel is closed, failing its pending read
+    static void testReapIdle() throws Exception {
+        System.out.println("-- reap idle --");
+
+        AsyncChannelGroup group = newGroup(IdleReaper.Policy.CLOSE);
+        ServerSocketChannel ssc = newServer();
+        AsynchronousSocketChannel ch = connect(group, ssc);
+        SocketChannel sc = ssc.accept();
+
+        long start = System.nanoTime();
+        Future<Integer> result = ch.read(ByteBuffer.allocate(100));
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            throw new RuntimeException("Read should have failed");
+        } catch (ExecutionException x) {
+            System.out.println("reaped: " + x.getCause());
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (elapsed < IDLE_MS / 2)
+            throw new RuntimeException("Reaped too early: " + elapsed + " ms");
+        if (ch.isOpen())
+            throw new RuntimeException("Channel should be closed");
+
+        sc.close();
+        ssc.close();
+        group.shutdownNow();
+    }
+
+    // with the NOTIFY policy, the pending read times out but the channel stays open
+    static void testNotifyIdle() throws Exception {
+        System.out.println("-- notify idle --");
+
+        AsyncChannelGroup group = newGroup(IdleReaper.Policy.NOTIFY);
+        ServerSocketChannel ssc = newServer();
+        AsynchronousSocketChannel ch = connect(group, ssc);
+        SocketChannel sc = ssc.accept();
+
+        try {
+            ch.read(ByteBuffer.allocate(100)).get(10, TimeUnit.SECONDS);
+            throw new RuntimeException("Read should have timed out");
+        } catch (ExecutionException x) {
+            if (!(x.getCause() instanceof InterruptedByTimeoutException))
+                throw new RuntimeException("InterruptedByTimeoutException expected: " + x.getCause());
+        }
+        if (!ch.isOpen())
+            throw new RuntimeException("Channel should still be open");
+
+        ch.close();
+        sc.close();
+        ssc.close();
+        group.shutdownNow();
+    }
+
+    // completed writes count as activity, so a busy writer is never reaped
+    static void testActiveNotReaped() throws Exception {
+        System.out.println("-- active not reaped --");
+
+        AsyncChannelGroup group = newGroup(IdleReaper.Policy.CLOSE);
+        ServerSocketChannel ssc = newServer();
+        AsynchronousSocketChannel ch = connect(group, ssc);
+        SocketChannel sc = ssc.accept();
+
+        ByteBuffer sink = ByteBuffer.allocate(1024);
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(IDLE_MS * 4);
+        while (System.nanoTime() < end) {
+            ch.write(ByteBuffer.wrap(new byte[16])).get(10, TimeUnit.SECONDS);
+            sink.clear();
+            sc.read(sink);
+            Thread.sleep(IDLE_MS / 6);
+        }
+        if (!ch.isOpen())
+            throw new RuntimeException("Active channel was reaped");
+
+        ch.close();
+        sc.close();
+        ssc.close();
+        group.shutdownNow();
+    }
+}
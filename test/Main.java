@@ -3,5 +3,38 @@ public class Main {
     public static void main(String[] args) throws Exception {
         // Test Basic I/O
         Basic.main(null);
+
+        // Test idle-connection reaping
+        Idle.main(null);
+
+        // Test CRC32-C combine and parallel checksums
+        Crc.main(null);
+
+        // Test composite buffers
+        Composite.main(null);
+
+        // Test frame codecs and frame channels
+        Frames.main(null);
+
+        // Test selector rebuilds
+        Rebuild.main(null);
+
+        // Test dispatcher tasks
+        Tasks.main(null);
+
+        // Test serial notifications
+        Serial.main(null);
+
+        // Test dispatcher-affine notifications
+        Affine.main(null);
+
+        // Test TLS channels
+        Tls.main(null);
+
+        // Test graceful drain
+        Drain.main(null);
+
+        // Test multicast subscribers
+        Multicast.main(null);
     }
 }
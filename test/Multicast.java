@@ -0,0 +1,43 @@
+/* @test
+ * @summary Unit test for AsyncMulticastSubscriber
+ * @run main Multicast
+ */
+
+import async.nio.channels.AsyncChannels.AsynchronousChannelGroup;
+import async.nio.channels.impl.AsyncChannelGroup;
+import async.nio.channels.impl.AsyncMulticastSubscriber;
+
+import java.net.InetAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class Multicast {
+
+    public static void main(String[] args) throws Exception {
+        testFailedJoin();
+        System.out.println("finished.");
+    }
+
+    // A subscriber failing to join (here a RuntimeException from the null
+    // interface) leaves no channel registered with the group
+    static void testFailedJoin() throws Exception {
+        System.out.println("-- failed join --");
+
+        AsyncChannelGroup group = (AsyncChannelGroup) AsynchronousChannelGroup.withFixedThreadPool(2,
+                Executors.defaultThreadFactory());
+        try {
+            new AsyncMulticastSubscriber(group, InetAddress.getByName("239.1.2.3"), 0, null);
+            throw new RuntimeException("Join without an interface succeeded");
+        } catch (NullPointerException x) {
+        }
+
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (group.channels().size() > 0 && System.nanoTime() < end) {
+            Thread.sleep(10);
+        }
+        if (group.channels().size() != 0)
+            throw new RuntimeException("Channels left registered: " + group.channels().size());
+
+        group.shutdownNow();
+    }
+}
@@ -0,0 +1,125 @@
+/* @test
+ * @summary Unit test for incremental selector rebuilds
+ * @run main Rebuild
+ */
+
+import async.nio.channels.AsyncChannels.AsynchronousChannelGroup;
+import async.nio.channels.AsyncSocketChannels.AsynchronousSocketChannel;
+import async.nio.channels.impl.AsyncChannelGroup;
+import async.nio.channels.impl.AsyncSocketChannel;
+import async.nio.dispatchers.SimpleChannelDispatcher;
+import async.nio.dispatchers.WaitStrategies;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class Rebuild {
+
+    static final int CHANNELS = 200;
+
+    public static void main(String[] args) throws Exception {
+        testMigration();
+        System.out.println("finished.");
+    }
+
+    // Forces one rebuild per dispatcher from its own thread, as the spin
+    // detector would, then checks that reads pending across the migration
+    // and later reads all complete
+    static void testMigration() throws Exception {
+        System.out.println("-- migration --");
+
+        int batch = SimpleChannelDispatcher.Defaults.MIGRATION_BATCH;
+        SimpleChannelDispatcher.Defaults.MIGRATION_BATCH = 16;
+
+        AsyncChannelGroup group = (AsyncChannelGroup) AsynchronousChannelGroup.withFixedThreadPool(2,
+                Executors.defaultThreadFactory());
+        ServerSocketChannel ssc = ServerSocketChannel.open();
+        ssc.socket().bind(new InetSocketAddress(InetAddress.getLocalHost(), 0));
+
+        AsyncSocketChannel[] chs = new AsyncSocketChannel[CHANNELS];
+        SocketChannel[] peers = new SocketChannel[CHANNELS];
+        Set<SimpleChannelDispatcher<?>> dispatchers =
+                Collections.newSetFromMap(new IdentityHashMap<SimpleChannelDispatcher<?>, Boolean>());
+        for (int i = 0; i < CHANNELS; i++) {
+            chs[i] = (AsyncSocketChannel) AsynchronousSocketChannel.open(group);
+            chs[i].connect(ssc.socket().getLocalSocketAddress()).get();
+            peers[i] = ssc.accept();
+            dispatchers.add((SimpleChannelDispatcher<?>) chs[i].dispatcher());
+            roundTrip(chs[i], peers[i]);
+        }
+
+        final Method rebuild = SimpleChannelDispatcher.class.getDeclaredMethod("rebuildSelector");
+        rebuild.setAccessible(true);
+        for (final SimpleChannelDispatcher<?> d : dispatchers) {
+            d.setWaitStrategy(new WaitStrategies.WaitStrategy() {
+                boolean rebuilt;
+
+                @Override
+                public int waitFor(WaitStrategies.Selection selection) throws IOException {
+                    if (!rebuilt) {
+                        rebuilt = true;
+                        try {
+                            rebuild.invoke(d);
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                        return 0;
+                    }
+                    return selection.select();
+                }
+            });
+        }
+
+        List<Future<Integer>> pending = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < CHANNELS; i++) {
+            pending.add(chs[i].read(ByteBuffer.allocate(1)));
+        }
+        Thread.sleep(200);
+        for (int i = 0; i < CHANNELS; i++) {
+            peers[i].write(ByteBuffer.wrap(new byte[]{2}));
+        }
+        for (Future<Integer> result : pending) {
+            if (result.get(10, TimeUnit.SECONDS) != 1)
+                throw new RuntimeException("Pending read lost across the migration");
+        }
+        for (int i = 0; i < CHANNELS; i++) {
+            roundTrip(chs[i], peers[i]);
+        }
+
+        long rebuilds = group.stats().getSelectorRebuilds();
+        long migrated = group.stats().getSelectorKeysMigrated();
+        System.out.println("rebuilds: " + rebuilds + ", keys migrated: " + migrated);
+        if (rebuilds != dispatchers.size())
+            throw new RuntimeException("Expected " + dispatchers.size() + " rebuilds");
+        if (migrated < CHANNELS)
+            throw new RuntimeException("Expected at least " + CHANNELS + " migrated keys");
+
+        for (int i = 0; i < CHANNELS; i++) {
+            chs[i].close();
+            peers[i].close();
+        }
+        ssc.close();
+        group.shutdownNow();
+        SimpleChannelDispatcher.Defaults.MIGRATION_BATCH = batch;
+    }
+
+    static void roundTrip(AsyncSocketChannel ch, SocketChannel peer) throws Exception {
+        Future<Integer> result = ch.read(ByteBuffer.allocate(1));
+        peer.write(ByteBuffer.wrap(new byte[]{1}));
+        if (result.get(10, TimeUnit.SECONDS) != 1)
+            throw new RuntimeException("Read failed");
+    }
+}
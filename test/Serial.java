@@ -0,0 +1,148 @@
+/* @test
+ * @summary Unit test for serial per-channel notifications
+ * @run main Serial
+ */
+
+import async.nio.channels.AsyncChannels.AsynchronousChannelGroup;
+import async.nio.channels.AsyncChannels.CompletionHandler;
+import async.nio.channels.AsyncSocketChannels.AsynchronousSocketChannel;
+import async.nio.channels.impl.AsyncChannelGroup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Serial {
+
+    static final int CHANNELS = 4;
+    static final int ROUNDS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        testSerial();
+        System.out.println("finished.");
+    }
+
+    static ServerSocketChannel newServer() throws IOException {
+        ServerSocketChannel ssc = ServerSocketChannel.open();
+        ssc.socket().bind(new InetSocketAddress(InetAddress.getLocalHost(), 0));
+        return ssc;
+    }
+
+    // Feeds one byte per round and swallows whatever the channel writes
+    static Thread startPeer(final SocketChannel peer) {
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                ByteBuffer sink = ByteBuffer.allocate(64 * 1024);
+                try {
+                    peer.configureBlocking(false);
+                    for (int i = 0; i < ROUNDS; i++) {
+                        peer.write(ByteBuffer.wrap(new byte[]{1}));
+                        sink.clear();
+                        peer.read(sink);
+                        Thread.sleep(0, 100000);
+                    }
+                } catch (Exception e) {
+                    // Peer closed by the test
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    // With serial notifications, the read and write handlers of a channel
+    // never run at the same time although the notifier pool is large
+    static void testSerial() throws Exception {
+        System.out.println("-- serial --");
+
+        AsyncChannelGroup group = (AsyncChannelGroup) AsynchronousChannelGroup.withFixedThreadPool(8,
+                Executors.defaultThreadFactory());
+        group.setSerialNotifications(true);
+        ServerSocketChannel ssc = newServer();
+
+        final AtomicInteger overlaps = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(CHANNELS * ROUNDS * 2);
+        SocketChannel[] peers = new SocketChannel[CHANNELS];
+        AsynchronousSocketChannel[] chs = new AsynchronousSocketChannel[CHANNELS];
+
+        for (int c = 0; c < CHANNELS; c++) {
+            final AsynchronousSocketChannel ch = AsynchronousSocketChannel.open(group);
+            ch.connect(ssc.socket().getLocalSocketAddress()).get();
+            chs[c] = ch;
+            peers[c] = ssc.accept();
+
+            final AtomicInteger inHandler = new AtomicInteger();
+            ByteBuffer rb = ByteBuffer.allocate(ROUNDS);
+            ch.read(rb, rb, new CompletionHandler<Integer, ByteBuffer>() {
+                @Override
+                public void completed(Integer n, ByteBuffer buf) {
+                    enter(inHandler, overlaps);
+                    for (int i = 0; i < n; i++) {
+                        done.countDown();
+                    }
+                    if (buf.hasRemaining()) {
+                        ch.read(buf, buf, this);
+                    }
+                }
+
+                @Override
+                public void failed(Throwable exc, ByteBuffer buf) {
+                }
+            });
+
+            ByteBuffer wb = ByteBuffer.allocate(1);
+            ch.write(wb, wb, new CompletionHandler<Integer, ByteBuffer>() {
+                int n;
+
+                @Override
+                public void completed(Integer result, ByteBuffer buf) {
+                    enter(inHandler, overlaps);
+                    done.countDown();
+                    if (++n < ROUNDS) {
+                        buf.clear();
+                        ch.write(buf, buf, this);
+                    }
+                }
+
+                @Override
+                public void failed(Throwable exc, ByteBuffer buf) {
+                }
+            });
+            startPeer(peers[c]);
+        }
+
+        if (!done.await(30, TimeUnit.SECONDS))
+            throw new RuntimeException("Completions missing: " + done.getCount());
+        if (overlaps.get() != 0)
+            throw new RuntimeException("Handlers of one channel overlapped " + overlaps.get() + " times");
+
+        for (int c = 0; c < CHANNELS; c++) {
+            chs[c].close();
+            peers[c].close();
+        }
+        ssc.close();
+        group.shutdownNow();
+    }
+
+    // Marks a handler as running for a short while, counting overlaps
+    static void enter(AtomicInteger inHandler, AtomicInteger overlaps) {
+        if (inHandler.incrementAndGet() > 1) {
+            overlaps.incrementAndGet();
+        }
+        try {
+            Thread.sleep(0, 50000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        inHandler.decrementAndGet();
+    }
+}
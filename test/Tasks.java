@@ -0,0 +1,248 @@
+/* @test
+ * @summary Unit test for tasks run on the dispatcher thread
+ * @run main Tasks
+ */
+
+import async.nio.channels.AsyncChannels.AsynchronousChannelGroup;
+import async.nio.channels.AsyncSocketChannels.AsynchronousSocketChannel;
+import async.nio.channels.impl.AsyncChannelGroup;
+import async.nio.channels.impl.AsyncSocketChannel;
+import async.nio.dispatchers.ChannelDispatcher;
+import async.nio.dispatchers.ScheduledTask;
+import async.nio.dispatchers.SimpleChannelDispatcher;
+import async.nio.dispatchers.WaitStrategies;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Tasks {
+
+    public static void main(String[] args) throws Exception {
+        testExecute();
+        testSchedule();
+        testRejectedAfterShutdown();
+        testShutdownRace();
+        testCancelledPurged();
+        System.out.println("finished.");
+    }
+
+    static AsyncChannelGroup newGroup() throws Exception {
+        return (AsyncChannelGroup) AsynchronousChannelGroup.withFixedThreadPool(2, Executors.defaultThreadFactory());
+    }
+
+    static ChannelDispatcher<?> dispatcherOf(AsyncChannelGroup group) throws Exception {
+        AsyncSocketChannel ch = (AsyncSocketChannel) AsynchronousSocketChannel.open(group);
+        return ch.dispatcher();
+    }
+
+    // Tasks from several threads all run on the dispatcher thread, each
+    // submitter's tasks in order, without any locking
+    static void testExecute() throws Exception {
+        System.out.println("-- execute --");
+
+        AsyncChannelGroup group = newGroup();
+        final ChannelDispatcher<?> d = dispatcherOf(group);
+
+        final int THREADS = 4, TASKS = 10000;
+        final int[] last = new int[THREADS];    // Confined to the dispatcher thread
+        final AtomicBoolean failed = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(THREADS * TASKS);
+
+        Thread[] submitters = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int id = t;
+            submitters[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 1; i <= TASKS; i++) {
+                        final int seq = i;
+                        d.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (!d.inDispatcherThread() || last[id] != seq - 1) {
+                                    failed.set(true);
+                                }
+                                last[id] = seq;
+                                done.countDown();
+                            }
+                        });
+                    }
+                }
+            };
+            submitters[t].start();
+        }
+        if (!done.await(10, TimeUnit.SECONDS))
+            throw new RuntimeException("Tasks did not run: " + done.getCount() + " left");
+        if (failed.get())
+            throw new RuntimeException("Task ran off the dispatcher thread or out of order");
+
+        group.shutdownNow();
+    }
+
+    static void testSchedule() throws Exception {
+        System.out.println("-- schedule --");
+
+        AsyncChannelGroup group = newGroup();
+        final ChannelDispatcher<?> d = dispatcherOf(group);
+
+        final long start = System.nanoTime();
+        final AtomicLong ranAfter = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(1);
+        d.schedule(new Runnable() {
+            @Override
+            public void run() {
+                ranAfter.set(System.nanoTime() - start);
+                done.countDown();
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+
+        final AtomicBoolean cancelledRan = new AtomicBoolean();
+        ScheduledTask cancelled = d.schedule(new Runnable() {
+            @Override
+            public void run() {
+                cancelledRan.set(true);
+            }
+        }, 20, TimeUnit.MILLISECONDS);
+        if (!cancelled.cancel())
+            throw new RuntimeException("Cancel failed");
+
+        if (!done.await(10, TimeUnit.SECONDS))
+            throw new RuntimeException("Scheduled task did not run");
+        if (ranAfter.get() < TimeUnit.MILLISECONDS.toNanos(50))
+            throw new RuntimeException("Ran too early: " + ranAfter.get() + " ns");
+        Thread.sleep(50);
+        if (cancelledRan.get())
+            throw new RuntimeException("Cancelled task ran");
+
+        group.shutdownNow();
+    }
+
+    static void testRejectedAfterShutdown() throws Exception {
+        System.out.println("-- rejected after shutdown --");
+
+        AsyncChannelGroup group = newGroup();
+        ChannelDispatcher<?> d = dispatcherOf(group);
+        group.shutdownNow();
+
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                throw new RuntimeException("Task ran after shutdown");
+            }
+        };
+        try {
+            d.execute(task);
+            throw new RuntimeException("execute() should have been rejected");
+        } catch (RejectedExecutionException x) {
+        }
+        try {
+            d.schedule(task, 10, TimeUnit.MILLISECONDS);
+            throw new RuntimeException("schedule() should have been rejected");
+        } catch (RejectedExecutionException x) {
+        }
+    }
+
+    // Every task submitted while the dispatcher shuts down either runs or
+    // is rejected, none is silently dropped
+    static void testShutdownRace() throws Exception {
+        System.out.println("-- shutdown race --");
+
+        for (int round = 0; round < 20; round++) {
+            AsyncChannelGroup group = newGroup();
+            final ChannelDispatcher<?> d = dispatcherOf(group);
+            final AtomicInteger accepted = new AtomicInteger();
+            final AtomicInteger ran = new AtomicInteger();
+            final Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    ran.incrementAndGet();
+                }
+            };
+
+            Thread[] submitters = new Thread[4];
+            for (int t = 0; t < submitters.length; t++) {
+                submitters[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            while (true) {
+                                d.execute(task);
+                                accepted.incrementAndGet();
+                            }
+                        } catch (RejectedExecutionException x) {
+                        }
+                    }
+                };
+                submitters[t].start();
+            }
+            Thread.sleep(5);
+            group.shutdownNow();
+            for (Thread submitter : submitters) {
+                submitter.join();
+            }
+
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (ran.get() != accepted.get() && System.nanoTime() < end) {
+                Thread.sleep(10);
+            }
+            if (ran.get() != accepted.get())
+                throw new RuntimeException("Accepted " + accepted.get() + " tasks, ran " + ran.get());
+        }
+    }
+
+    // Cancelled scheduled tasks do not wake the dispatcher at their deadline
+    static void testCancelledPurged() throws Exception {
+        System.out.println("-- cancelled tasks purged --");
+
+        AsyncChannelGroup group = newGroup();
+        final SimpleChannelDispatcher<?> d = (SimpleChannelDispatcher<?>) dispatcherOf(group);
+        final AtomicInteger wakeups = new AtomicInteger();
+        d.setWaitStrategy(new WaitStrategies.WaitStrategy() {
+            @Override
+            public int waitFor(WaitStrategies.Selection selection) throws IOException {
+                int n = selection.select();
+                wakeups.incrementAndGet();
+                return n;
+            }
+        });
+
+        // Scheduled from the dispatcher thread, so nothing wakes it up
+        final List<ScheduledTask> pending = new ArrayList<ScheduledTask>();
+        final CountDownLatch scheduled = new CountDownLatch(1);
+        d.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 1; i <= 20; i++) {
+                    pending.add(d.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                        }
+                    }, 10 * i, TimeUnit.MILLISECONDS));
+                }
+                scheduled.countDown();
+            }
+        });
+        if (!scheduled.await(10, TimeUnit.SECONDS))
+            throw new RuntimeException("Tasks not scheduled");
+        for (ScheduledTask task : pending) {
+            task.cancel();
+        }
+
+        Thread.sleep(100);
+        wakeups.set(0);
+        Thread.sleep(300);
+        if (wakeups.get() > 2)
+            throw new RuntimeException("Dispatcher woken " + wakeups.get() + " times by cancelled tasks");
+
+        group.shutdownNow();
+    }
+}
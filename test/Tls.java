@@ -0,0 +1,78 @@
+/* @test
+ * @summary Unit test for AsyncSslSocketChannel failures
+ * @run main Tls
+ */
+
+import async.nio.channels.AsyncChannels.AsynchronousChannelGroup;
+import async.nio.channels.AsyncSocketChannels.AsynchronousSocketChannel;
+import async.nio.channels.impl.AsyncChannelGroup;
+import async.nio.channels.impl.AsyncSocketChannel;
+import async.nio.channels.impl.AsyncSslSocketChannel;
+import async.nio.channels.impl.AsyncSslSocketChannel.SessionCache;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class Tls {
+
+    public static void main(String[] args) throws Exception {
+        testHandshakeFailure();
+        System.out.println("finished.");
+    }
+
+    // Expects the operation to fail with an SSLException
+    static void expectSslFailure(String what, Future<?> result) throws Exception {
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            throw new RuntimeException(what + " should have failed");
+        } catch (ExecutionException x) {
+            if (!(x.getCause() instanceof SSLException))
+                throw new RuntimeException(what + ": SSLException expected, got " + x.getCause());
+            System.out.println(what + ": " + x.getCause());
+        }
+    }
+
+    // A peer answering the ClientHello with garbage fails the handshake
+    // waiters, and the read waiting on it, with the engine's SSLException
+    // rather than the close that follows
+    static void testHandshakeFailure() throws Exception {
+        System.out.println("-- handshake failure --");
+
+        AsyncChannelGroup group = (AsyncChannelGroup) AsynchronousChannelGroup.withFixedThreadPool(2,
+                Executors.defaultThreadFactory());
+        ServerSocketChannel ssc = ServerSocketChannel.open();
+        ssc.socket().bind(new InetSocketAddress(InetAddress.getLocalHost(), 0));
+
+        AsyncSocketChannel ch = (AsyncSocketChannel) AsynchronousSocketChannel.open(group);
+        ch.connect(ssc.socket().getLocalSocketAddress()).get();
+        SocketChannel peer = ssc.accept();
+        AsyncSslSocketChannel tls = new AsyncSslSocketChannel(ch, new SessionCache(SSLContext.getDefault()), true);
+
+        Future<Void> handshake = tls.handshake();
+        Future<Integer> read = tls.read(ByteBuffer.allocate(16));
+
+        // Wait for the ClientHello so the reply is unwrapped by the dispatcher
+        if (peer.read(ByteBuffer.allocate(1024)) <= 0)
+            throw new RuntimeException("No ClientHello");
+        Thread.sleep(100);
+        peer.write(ByteBuffer.wrap("HTTP/1.1 400 Bad Request\r\n\r\n".getBytes()));
+
+        expectSslFailure("handshake", handshake);
+        expectSslFailure("read", read);
+        expectSslFailure("later handshake", tls.handshake());
+
+        tls.close();
+        peer.close();
+        ssc.close();
+        group.shutdownNow();
+    }
+}